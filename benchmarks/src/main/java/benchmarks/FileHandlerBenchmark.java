@@ -0,0 +1,84 @@
+package benchmarks;
+
+import models.Location;
+import models.SearchEntry;
+import org.openjdk.jmh.annotations.*;
+import utils.FileHandler;
+import utils.ModelCodecs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading SearchEntry lists through FileHandler, the way RecentSearches persists its history.
+ * 10 entries is the real history size, 1000 shows how the format scales.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileHandlerBenchmark {
+
+    @Param({"10", "1000"})
+    public int entries;
+
+    private Path directory;
+    private String readFile;
+    private String writeFile;
+    private List<SearchEntry> items;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("filehandler-bench");
+        readFile = directory.resolve("read.bin").toString();
+        writeFile = directory.resolve("write.bin").toString();
+
+        items = new ArrayList<>(entries);
+        LocalDateTime time = LocalDateTime.of(2025, 10, 31, 14, 0);
+        for (int i = 0; i < entries; i++) {
+            Location location = new Location();
+            location.setId(5_128_581 + i);
+            location.setName("New York " + i);
+            location.setLatitude(40.71427 + i * 0.01);
+            location.setLongitude(-74.00597 - i * 0.01);
+            location.setElevation(10);
+            location.setAdmin1("New York");
+            location.setCountry("United States");
+            location.setCountryCode("US");
+            location.setCountryId(6_252_001);
+            location.setPostcodes(new String[]{"10001", "10002", "10003"});
+            items.add(new SearchEntry(location, time.plusMinutes(i)));
+        }
+        FileHandler.writeToFile(readFile, ModelCodecs.SEARCH_ENTRY, items);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Path.of(readFile));
+        Files.deleteIfExists(Path.of(writeFile));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public boolean write() {
+        return FileHandler.writeToFile(writeFile, ModelCodecs.SEARCH_ENTRY, items);
+    }
+
+    @Benchmark
+    public List<SearchEntry> read() {
+        return FileHandler.readFromFile(readFile, ModelCodecs.SEARCH_ENTRY);
+    }
+
+    @Benchmark
+    public List<SearchEntry> roundTrip() {
+        FileHandler.writeToFile(writeFile, ModelCodecs.SEARCH_ENTRY, items);
+        return FileHandler.readFromFile(writeFile, ModelCodecs.SEARCH_ENTRY);
+    }
+}
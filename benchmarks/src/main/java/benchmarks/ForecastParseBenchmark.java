@@ -0,0 +1,44 @@
+package benchmarks;
+
+import models.Forecast;
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson deserialization of a forecast response into the columnar Forecast model.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ForecastParseBenchmark {
+
+    @Param({"1", "7", "16"})
+    public int days;
+
+    private byte[] payload;
+    private ObjectMapper mapper;
+    private Forecast parsed;
+
+    @Setup
+    public void setup() {
+        payload = Payloads.forecast(days);
+        mapper = Payloads.mapper();
+        parsed = mapper.readValue(payload, Forecast.class);
+    }
+
+    @Benchmark
+    public Forecast parse() {
+        return mapper.readValue(payload, Forecast.class);
+    }
+
+    // Applying the forecast_days setting to an already parsed forecast (should not depend on the horizon)
+    @Benchmark
+    public Forecast sliceToWeek() {
+        return parsed.withDays(7);
+    }
+}
@@ -0,0 +1,73 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import utils.Enums;
+import utils.UnitConverter;
+import utils.WeatherIconManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The small helpers every forecast cell calls: the icon lookup and the unit conversion and formatting
+ * (UnitConverter, which replaced the Forecast.getFormatted* helpers). Each invocation handles 384 values,
+ * one per hour of a 16-day forecast, so the score is comparable to one full re-render.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormattingBenchmark {
+    private static final int VALUES = 16 * 24;
+    private static final int[] WMO_CODES = {0, 1, 2, 3, 45, 48, 51, 53, 55, 56, 57, 61, 63, 65, 66, 67,
+            71, 73, 75, 77, 80, 81, 82, 85, 86, 95, 96, 99, 42};
+
+    // canonical needs no conversion, imperial converts every value
+    @Param({"canonical", "imperial"})
+    public String units;
+
+    private UnitConverter converter;
+    private final int[] codes = new int[VALUES];
+    private final double[] values = new double[VALUES];
+
+    @Setup
+    public void setup() {
+        converter = units.equals("imperial")
+                ? new UnitConverter(Enums.TemperatureUnit.fahrenheit, Enums.WindSpeedUnit.mph, Enums.PrecipitationUnit.inch)
+                : UnitConverter.CANONICAL;
+        for (int i = 0; i < VALUES; i++) {
+            codes[i] = WMO_CODES[i % WMO_CODES.length];
+            values[i] = 10 + 8 * Math.sin(i / 24.0 * 2 * Math.PI);
+        }
+    }
+
+    @Benchmark
+    public void iconCharacter(Blackhole bh) {
+        for (int code : codes) {
+            bh.consume(WeatherIconManager.getIconCharacter(code));
+        }
+    }
+
+    @Benchmark
+    public void formatTemperature(Blackhole bh) {
+        for (double value : values) {
+            bh.consume(converter.formatTemperature(value));
+        }
+    }
+
+    @Benchmark
+    public void formatWindSpeed(Blackhole bh) {
+        for (double value : values) {
+            bh.consume(converter.formatWindSpeed(value));
+        }
+    }
+
+    @Benchmark
+    public void formatPrecipitation(Blackhole bh) {
+        for (double value : values) {
+            bh.consume(converter.formatPrecipitation(value));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package benchmarks;
+
+import tools.jackson.databind.DeserializationFeature;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * The forecast responses the benchmarks work on. They follow the Open-Meteo response format for the
+ * variables ForecastLookup requests (canonical units, timezone=auto), for a 1, 7 and 16 day horizon,
+ * including the trailing nulls the API sends for variables that don't cover the whole horizon.
+ */
+final class Payloads {
+
+    private Payloads() {}
+
+    static byte[] forecast(int days) {
+        String name = "/payloads/forecast-" + days + "d.json";
+        try (InputStream in = Payloads.class.getResourceAsStream(name)) {
+            if (in == null) throw new IllegalArgumentException("No payload " + name);
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Configured the same way as the mapper in ForecastLookup
+    static ObjectMapper mapper() {
+        return JsonMapper.builder()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .build();
+    }
+}
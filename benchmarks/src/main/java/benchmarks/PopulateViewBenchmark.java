@@ -0,0 +1,65 @@
+package benchmarks;
+
+import gui.components.ForecastItems;
+import models.Forecast;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import utils.UnitConverter;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-item model work of HourlyForecastView and DailyForecastView.populateView: the same ForecastItems
+ * calls their cell binders make, with a target that hands the texts to the Blackhole instead of to JavaFX
+ * labels (which need a running toolkit).
+ * Unlike the views, every item is bound, not only the visible ones, so the score is per full forecast.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PopulateViewBenchmark {
+
+    @Param({"1", "7", "16"})
+    public int days;
+
+    private final UnitConverter converter = UnitConverter.CANONICAL;
+    private Forecast forecast;
+
+    @Setup
+    public void setup() {
+        forecast = Payloads.mapper().readValue(Payloads.forecast(days), Forecast.class);
+    }
+
+    // The payload is in the past, so it starts at the first hour instead of "now"
+    @Benchmark
+    public void hourlyItems(Blackhole bh) {
+        Forecast.Hourly hourlyData = forecast.getHourly();
+        ForecastItems.Target target = new BlackholeTarget(bh);
+        for (int i = 0; i < hourlyData.size(); i++) {
+            ForecastItems.bindHour(target, hourlyData, i, i == 0, converter);
+        }
+    }
+
+    // The payload's first day stands in for "today"
+    @Benchmark
+    public void dailyItems(Blackhole bh) {
+        Forecast.Daily dailyData = forecast.getDaily();
+        ForecastItems.Target target = new BlackholeTarget(bh);
+        LocalDate today = dailyData.getTimeAxis().localDateAt(0);
+        for (int i = 0; i < dailyData.size(); i++) {
+            ForecastItems.bindDay(target, dailyData, i, today, converter);
+        }
+    }
+
+    private record BlackholeTarget(Blackhole bh) implements ForecastItems.Target {
+        @Override public void setTitle(String title) { bh.consume(title); }
+        @Override public void setDate(String date) { bh.consume(date); }
+        @Override public void setIcon(String icon) { bh.consume(icon); }
+        @Override public void setHigh(String high) { bh.consume(high); }
+        @Override public void setLow(String low) { bh.consume(low); }
+    }
+}
@@ -5,25 +5,42 @@ import models.Location;
 import tools.jackson.databind.DeserializationFeature;
 import tools.jackson.databind.ObjectMapper;
 import tools.jackson.databind.json.JsonMapper;
+import utils.CircuitBreaker;
+import utils.ForecastSnapshotStore;
+import utils.LruCache;
+import utils.MetricsRegistry;
 import utils.Settings;
+import utils.UnitConverter;
 
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.util.Properties;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
 
 import static java.lang.System.out;
 
 /**
  * Handles all API communication with the Open-Meteo weather service.
- * This class is responsible for building the API request URL based on
- * user settings and parsing the JSON response into the Forecast model.
+ * This class is responsible for building the API request URL and parsing the JSON response into the Forecast model.
+ * Forecasts are requested in canonical units for the full 16-day horizon, the views apply the
+ * user's units and number of days locally.
  */
 public class ForecastLookup {
-    // The HttpClient for making all web requests.
-    private HttpClient client;
-    private HttpRequest request;
+    // Sends the requests with compression and conditional revalidation, on the app's shared HttpClient.
+    private final HttpFetcher fetcher;
 
     // The Jackson ObjectMapper is used to convert JSON strings into Java objects.
     private final ObjectMapper mapper;
@@ -31,15 +48,37 @@ public class ForecastLookup {
     // Base URL for the Open-Meteo API. We add parameters on top of that.
     private String baseUrl = "https://api.open-meteo.com/v1/forecast?latitude=";
     private String longitudeUrl = "&longitude=";
-    private final Settings settings;
+
+    // The longest forecast the API offers. It is always fetched in full, shorter horizons
+    // (the forecast_days setting) are slices of it (see Forecast.withDays), so they share one cache entry.
+    public static final int MAX_FORECAST_DAYS = 16;
+    // Batch requests are split so that no URL gets longer than this (common server limits start around 8 KB)
+    private static final int MAX_URL_LENGTH = 8000;
+    // Responses larger than this are parsed in parallel, one location per task
+    private static final int PARALLEL_PARSE_THRESHOLD = 256 * 1024;
+
+    // Recently fetched forecasts, keyed by rounded coordinates.
+    // Forecasts are always fetched in canonical units and for the full horizon, so no setting is part of the key.
+    // Stale entries are still served immediately while a fresh copy is fetched in the background.
+    private final LruCache<String, Forecast> cache;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    // Requests that are still in flight, by cache key. A second request for the same key joins the first one.
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+    private BiConsumer<Location, Forecast> onBackgroundRefresh;
+    // ETag / Last-Modified of the response behind each cache entry, sent along when the entry is refreshed
+    private final LruCache<String, HttpFetcher.Validators> validators;
+
+    // Optional on-disk copy of the last good response per location, used to render instantly on startup.
+    private ForecastSnapshotStore snapshotStore;
 
     /**
      * Constructs the ForecastLookup service.
-     * @param settings The shared Settings object, used to get user preferences (e.g., units).
+     * @param settings The shared Settings object, used for the cache settings.
+     * @param httpClientService The shared HTTP client all requests are sent with.
      */
-    public ForecastLookup(Settings settings) {
-        this.client = HttpClient.newHttpClient();
-        this.settings = settings;
+    public ForecastLookup(Settings settings, HttpClientService httpClientService) {
+        this.fetcher = httpClientService.getFetcher();
         // Configure the mapper to ignore new fields from the API,
         // which prevents the app from crashing if the API is updated.
         // Also, we are not interested in all the fields from the API, so if it returns something we don't evaluate
@@ -47,54 +86,555 @@ public class ForecastLookup {
         this.mapper = JsonMapper.builder()
                 .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
                 .build();
+        this.cache = new LruCache<>(
+                settings.getIntProperty("forecast_cache_size", 32),
+                Duration.ofMinutes(settings.getIntProperty("forecast_cache_ttl_minutes", 15)));
+        // Validators stay usable long after the forecast itself went stale, that's the point of them
+        this.validators = new LruCache<>(cache.getMaxEntries(), Duration.ofDays(1));
+
+        MetricsRegistry.get().gauge("forecast.cache.hit_ratio", cache::getHitRatio);
+        MetricsRegistry.get().gauge("forecast.coalesced", coalesced::get);
     }
 
     /**
-     * Fetches the weather forecast for a specific location.
+     * Fetches the weather forecast for a specific location, blocking until the response is parsed.
+     * Never call this from the JavaFX Application Thread, use getForecastAsync instead.
      * @param location The Location object containing the latitude and longitude.
-     * @return A Forecast object populated with all data, or null if the request fails.
+     * @return A Forecast object populated with all data, the last known forecast if the API can't be reached, or null if there is none.
      */
     public Forecast getForecast(Location location) {
-        try{
-            Properties props = settings.getProperties();
-
-            // Dynamic URL Building
-            // Assemble the full API URL by combining the base URL, location coordinates,
-            // and all the user's saved preferences for units, days, etc.
-            String url = baseUrl + location.getLatitude() + longitudeUrl + location.getLongitude()
-                    + "&current=temperature_2m,relative_humidity_2m,apparent_temperature,is_day,weathercode,windspeed_10m,rain,showers"
-                    + "&current_units=temperature_2m,windspeed_10m,rain,showers"
-                    + "&hourly=temperature_2m,relative_humidity_2m,is_day,weather_code,wind_speed_10m,wind_direction_10m,precipitation_probability,uv_index"
-                    + "&daily=weather_code,temperature_2m_max,temperature_2m_min,sunrise,sunset"
-                    // API settings
-                    + "&timezone=auto"
-                    + "&temperature_unit=" + props.getProperty("temperature_unit")
-                    + "&wind_speed_unit=" + props.getProperty("wind_speed_unit")
-                    + "&precipitation_unit=" + props.getProperty("precipitation_unit")
-                    + "&forecast_days=" + props.getProperty("forecast_days");
-
-            // Build the HTTP GET request.
-            request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .GET()
-                    .build();
-
-            // Send the request and get the response as a string.
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == 200) {
-                // If the request was successful (HTTP 200),
-                // use the Jackson mapper to parse the JSON response body
-                // into our Forecast.java object structure.
-                return mapper.readValue(response.body(), Forecast.class);
-            } else {
-                out.println("API request failed with status code: " + response.statusCode());
-                out.println("Response Body: " + response.body());
+        try {
+            return getForecastAsync(location).join();
+        } catch (CancellationException | CompletionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Fetches the weather forecast for a specific location without blocking the calling thread.
+     * If the forecast is in the cache it is returned right away. When that cached copy is older than the TTL,
+     * it is still returned, and a fresh copy is fetched in the background and handed to the
+     * listener registered with setOnBackgroundRefresh.
+     * Otherwise, the HTTP exchange and the JSON parsing both run on the HttpClient's worker threads,
+     * so the caller has to hop back onto the FX thread (Platform.runLater) before touching the UI.
+     * Cancelling the returned future also aborts the underlying HTTP exchange.
+     * @param location The Location object containing the latitude and longitude.
+     * @return A future completed with the parsed Forecast. If the request fails (after retries) or the API's
+     *         circuit breaker is open, it completes with the last known forecast instead, or with null if there is none.
+     */
+    public CompletableFuture<Forecast> getForecastAsync(Location location) {
+        String key = cacheKey(location);
+        LruCache.Entry<Forecast> cached = cache.get(key);
+        if (cached != null) {
+            if (cached.isExpired()) {
+                refreshInBackground(location, key);
+            }
+            return CompletableFuture.completedFuture(cached.value());
+        }
+        return fetch(location, key, null);
+    }
+
+    /**
+     * Registers a listener that is called (on a background thread) whenever a stale cache entry
+     * has been replaced with a freshly fetched forecast.
+     */
+    public void setOnBackgroundRefresh(BiConsumer<Location, Forecast> listener) {
+        this.onBackgroundRefresh = listener;
+    }
+
+    /**
+     * Points the lookup at another server with the same API, e.g. a local stub for load tests.
+     * @param url The forecast endpoint without parameters, e.g. "http://localhost:9000/v1/forecast".
+     */
+    public void setApiUrl(String url) {
+        this.baseUrl = url + "?latitude=";
+    }
+
+    /**
+     * Sets the store that successful responses are written to. Without a store, nothing is persisted.
+     */
+    public void setSnapshotStore(ForecastSnapshotStore snapshotStore) {
+        this.snapshotStore = snapshotStore;
+    }
+
+    /**
+     * Loads the last stored forecast for the location from the snapshot store into the cache.
+     * The entry keeps its original fetch time, so if it is older than the TTL the next
+     * getForecastAsync call returns it immediately and refreshes it in the background.
+     * @return The stored Forecast, or null if there is no usable snapshot for this location.
+     */
+    public Forecast restoreSnapshot(Location location) {
+        return restoreSnapshot(cacheKey(location));
+    }
+
+    private Forecast restoreSnapshot(String key) {
+        if (snapshotStore == null) return null;
+
+        ForecastSnapshotStore.Snapshot snapshot = snapshotStore.get(key);
+        if (snapshot == null) return null;
+
+        try {
+            Forecast forecast = mapper.readValue(snapshot.json(), Forecast.class);
+            long age = System.currentTimeMillis() - snapshot.fetchedAtMillis();
+            cache.put(key, forecast, cache.getDefaultTtl().minusMillis(age));
+            return forecast;
+        } catch (Exception e) {
+            out.println("Could not parse the stored forecast for " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Fetches the forecasts for several locations with as few HTTP requests as possible.
+     * Fresh forecasts are taken from the cache. All other locations are sent as comma-separated
+     * coordinate lists, split into as many requests as needed to keep each URL under MAX_URL_LENGTH.
+     * Large responses are parsed in parallel, one array element per task.
+     * @param locations The locations to fetch.
+     * @return A future completed with one Forecast per location, in the same order.
+     *         If a request failed, the entry is the last known forecast, or null if there is none.
+     */
+    public CompletableFuture<List<Forecast>> getForecasts(List<Location> locations) {
+        return getForecasts(locations, true);
+    }
+
+    /**
+     * Same as getForecasts, but ignores the cache and always fetches. Every refreshed forecast is
+     * also handed to the background refresh listener, so a location on screen picks up the new data.
+     * Entries whose request failed are null, there is no fallback to old data here.
+     */
+    public CompletableFuture<List<Forecast>> refreshForecasts(List<Location> locations) {
+        return getForecasts(locations, false).thenApply(forecasts -> {
+            BiConsumer<Location, Forecast> listener = onBackgroundRefresh;
+            for (int i = 0; i < forecasts.size(); i++) {
+                if (forecasts.get(i) != null && listener != null) {
+                    listener.accept(locations.get(i), forecasts.get(i));
+                }
+            }
+            return forecasts;
+        });
+    }
+
+    /**
+     * Returns when the cached forecast for the location stops being fresh (epoch millis),
+     * or 0 if it isn't cached. Doesn't count towards the cache statistics.
+     */
+    public long getCacheExpiry(Location location) {
+        LruCache.Entry<Forecast> entry = cache.peek(cacheKey(location));
+        return entry == null ? 0 : entry.expiresAtMillis();
+    }
+
+    private CompletableFuture<List<Forecast>> getForecasts(List<Location> locations, boolean useCache) {
+        Forecast[] results = new Forecast[locations.size()];
+        String[] keys = new String[locations.size()];
+        // The flights this call leads (one per location it fetches itself) and the ones it joined
+        Flight[] flights = new Flight[locations.size()];
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+
+        // Group the locations that aren't cached into batches that fit into one URL each
+        List<List<Integer>> batches = new ArrayList<>();
+        List<Integer> batch = new ArrayList<>();
+        int urlLength = buildUrl("", "").length();
+        for (int i = 0; i < locations.size(); i++) {
+            keys[i] = cacheKey(locations.get(i));
+            Forecast cached = useCache ? cache.getFresh(keys[i]) : null;
+            if (cached != null) {
+                results[i] = cached;
+                continue;
+            }
+
+            // Someone is already fetching this location, wait for that instead of asking again
+            Flight flight = new Flight(keys[i]);
+            CompletableFuture<Forecast> joined = joinOrLead(flight);
+            if (joined != null) {
+                int index = i;
+                pending.add(joined.thenAccept(forecast -> results[index] = forecast));
+                continue;
+            }
+            flights[i] = flight;
+
+            // Two coordinates plus two separating commas
+            int added = String.valueOf(locations.get(i).getLatitude()).length()
+                    + String.valueOf(locations.get(i).getLongitude()).length() + 2;
+            if (!batch.isEmpty() && urlLength + added > MAX_URL_LENGTH) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                urlLength = buildUrl("", "").length();
+            }
+            batch.add(i);
+            urlLength += added;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+
+        for (List<Integer> indices : batches) {
+            // fetchBatch never fails, failed locations are just left null. Hand every result to whoever joined meanwhile.
+            pending.add(fetchBatch(locations, keys, indices, results).whenComplete((done, e) -> {
+                for (int index : indices) {
+                    // A caller that may use the cache rather gets old data than none. A refresh doesn't want it back.
+                    if (results[index] == null && useCache) {
+                        results[index] = fallback(keys[index]);
+                    }
+                    flights[index].complete(results[index]);
+                }
+            }));
+        }
+        return CompletableFuture.allOf(pending.toArray(CompletableFuture<?>[]::new))
+                .thenApply(done -> Arrays.asList(results));
+    }
+
+    // Sends one multi-location request and writes the parsed forecasts into their slots in results.
+    private CompletableFuture<Void> fetchBatch(List<Location> locations, String[] keys, List<Integer> batch, Forecast[] results) {
+        StringJoiner latitudes = new StringJoiner(",");
+        StringJoiner longitudes = new StringJoiner(",");
+        for (int index : batch) {
+            latitudes.add(String.valueOf(locations.get(index).getLatitude()));
+            longitudes.add(String.valueOf(locations.get(index).getLongitude()));
+        }
+
+        // A batch of one is the same request as a single fetch, so it can be revalidated just the same
+        String singleKey = batch.size() == 1 ? keys[batch.get(0)] : null;
+        HttpFetcher.Validators conditional = singleKey != null ? validatorsFor(singleKey) : null;
+
+        long start = System.nanoTime();
+        return fetcher.getAsync(URI.create(buildUrl(latitudes.toString(), longitudes.toString())), conditional)
+                .thenAccept(response -> {
+                    MetricsRegistry.get().timer("forecast.batch.http").recordSince(start);
+                    if (response.isNotModified()) {
+                        Forecast kept = keepCached(singleKey);
+                        if (kept != null) {
+                            cache.put(singleKey, kept);
+                        }
+                        results[batch.get(0)] = kept;
+                        return;
+                    }
+                    if (response.statusCode() != 200) {
+                        out.println("API request failed with status code: " + response.statusCode());
+                        out.println("Response Body: " + new String(response.body(), StandardCharsets.UTF_8));
+                        return;
+                    }
+
+                    // A single location comes back as an object, several as an array of objects in request order
+                    byte[] body = response.body();
+                    List<int[]> elements = splitTopLevelArray(body);
+                    if (elements.size() != batch.size()) {
+                        out.println("Expected " + batch.size() + " forecasts in the response, got " + elements.size());
+                        return;
+                    }
+
+                    IntStream tasks = IntStream.range(0, elements.size());
+                    if (body.length >= PARALLEL_PARSE_THRESHOLD) {
+                        tasks = tasks.parallel();
+                    }
+                    tasks.forEach(i -> {
+                        int index = batch.get(i);
+                        int[] slice = elements.get(i);
+                        Forecast forecast = parseAndStore(body, slice[0], slice[1], keys[index]);
+                        cache.put(keys[index], forecast);
+                        results[index] = forecast;
+                    });
+                    if (singleKey != null) {
+                        rememberValidators(singleKey, response.validators());
+                    }
+                })
+                .exceptionally(e -> {
+                    logFailure(e);
+                    return null;
+                });
+    }
+
+    /**
+     * Finds the byte ranges ({offset, length}) of the objects in a top-level JSON array,
+     * so that each one can be handed to the parser (and the snapshot store) separately.
+     * A body that is a single object yields one range covering it.
+     */
+    private static List<int[]> splitTopLevelArray(byte[] body) {
+        List<int[]> elements = new ArrayList<>();
+        int i = 0;
+        while (i < body.length && Character.isWhitespace(body[i])) i++;
+        if (i < body.length && body[i] == '{') {
+            elements.add(new int[]{0, body.length});
+            return elements;
+        }
+
+        int depth = 0;
+        int start = -1;
+        boolean inString = false;
+        for (; i < body.length; i++) {
+            byte c = body[i];
+            if (inString) {
+                if (c == '\\') i++;
+                else if (c == '"') inString = false;
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{') {
+                if (depth++ == 0) start = i;
+            } else if (c == '}') {
+                if (--depth == 0) elements.add(new int[]{start, i - start + 1});
+            }
+        }
+        return elements;
+    }
+
+    // Number of requests that were answered by joining an identical request already in flight
+    public long getCoalescedRequests() {
+        return coalesced.get();
+    }
+
+    // Exposes the cache so its hit/miss/eviction counters can be inspected.
+    public LruCache<String, Forecast> getCache() {
+        return cache;
+    }
+
+    // Re-fetches a stale entry, at most once at a time per key. The stale copy stays in place if this fails.
+    private void refreshInBackground(Location location, String key) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        LruCache.Entry<Forecast> stale = cache.peek(key);
+        fetch(location, key, validatorsFor(key)).whenComplete((forecast, e) -> {
+            refreshing.remove(key);
+            BiConsumer<Location, Forecast> listener = onBackgroundRefresh;
+            // If the refresh failed, the fallback is the stale copy the caller already has
+            if (forecast != null && (stale == null || forecast != stale.value()) && listener != null) {
+                listener.accept(location, forecast);
+            }
+        });
+    }
+
+    /**
+     * Fetches one forecast, or joins the request for the same key that is already in flight.
+     * Every caller gets its own future, so one caller cancelling doesn't affect the others;
+     * the HTTP exchange is only aborted once all of them have cancelled.
+     */
+    private CompletableFuture<Forecast> fetch(Location location, String key, HttpFetcher.Validators conditional) {
+        Flight flight = new Flight(key);
+        CompletableFuture<Forecast> joined = joinOrLead(flight);
+        if (joined != null) {
+            return joined;
+        }
+        CompletableFuture<Forecast> caller = flight.join();
+        flight.start(request(location, key, conditional));
+        return caller;
+    }
+
+    /**
+     * Registers the flight for its key, unless another one is already in progress.
+     * @return A future joined to the flight in progress, or null if the given flight is now the one in progress.
+     */
+    private CompletableFuture<Forecast> joinOrLead(Flight flight) {
+        while (true) {
+            Flight existing = inFlight.putIfAbsent(flight.key, flight);
+            if (existing == null) {
                 return null;
             }
-        } catch (Exception e){
-            e.printStackTrace();
+            CompletableFuture<Forecast> joined = existing.join();
+            if (joined != null) {
+                coalesced.incrementAndGet();
+                return joined;
+            }
+            // Everyone waiting for it just gave up and it is being cancelled, start over
+            inFlight.remove(flight.key, existing);
+        }
+    }
+
+    /**
+     * Sends the request for one forecast. With validators, the request is conditional: if the server answers
+     * 304 Not Modified, the cached forecast is kept and its TTL starts over.
+     */
+    private CompletableFuture<Forecast> request(Location location, String key, HttpFetcher.Validators conditional) {
+        URI uri = URI.create(buildUrl(String.valueOf(location.getLatitude()), String.valueOf(location.getLongitude())));
+        long start = System.nanoTime();
+        CompletableFuture<HttpFetcher.Response> exchange = fetcher.getAsync(uri, conditional);
+        CompletableFuture<Forecast> result = exchange
+                .thenApply(response -> {
+                    MetricsRegistry.get().timer("forecast.http").recordSince(start);
+                    Forecast forecast = parseResponse(response, key);
+                    // Only successful responses are cached. An error status (e.g. a 503 after the last retry)
+                    // is as much a failure as an exception, so it gets the same fallback.
+                    if (forecast == null) {
+                        return fallback(key);
+                    }
+                    cache.put(key, forecast);
+                    return forecast;
+                })
+                .exceptionally(e -> {
+                    if (e instanceof CancellationException || e.getCause() instanceof CancellationException) {
+                        return null;
+                    }
+                    logFailure(e);
+                    return fallback(key);
+                });
+
+        // If a newer request supersedes this one, the caller cancels it. Pass that on to the HTTP exchange
+        // so we don't keep downloading a response nobody is waiting for.
+        result.whenComplete((forecast, e) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * One request in flight, shared by everyone who asked for the same key while it was running.
+     */
+    private final class Flight {
+        private final String key;
+        private final CompletableFuture<Forecast> shared = new CompletableFuture<>();
+        // The request to abort once nobody waits any more. Batch flights have none and always run to the end.
+        private CompletableFuture<Forecast> request;
+        private int callers;
+        private boolean abandoned;
+
+        Flight(String key) {
+            this.key = key;
+        }
+
+        // Returns a new future for one more caller, or null if the flight is already being cancelled.
+        synchronized CompletableFuture<Forecast> join() {
+            if (abandoned) {
+                return null;
+            }
+            callers++;
+            CompletableFuture<Forecast> caller = shared.copy();
+            caller.whenComplete((forecast, e) -> {
+                if (caller.isCancelled()) {
+                    release();
+                }
+            });
+            return caller;
+        }
+
+        void start(CompletableFuture<Forecast> request) {
+            synchronized (this) {
+                this.request = request;
+            }
+            request.whenComplete((forecast, e) -> complete(forecast));
+        }
+
+        void complete(Forecast forecast) {
+            // Leave the map first, the result is already in the cache for anyone asking after this
+            inFlight.remove(key, this);
+            shared.complete(forecast);
+        }
+
+        private void release() {
+            CompletableFuture<Forecast> toCancel = null;
+            synchronized (this) {
+                if (--callers == 0 && request != null && !shared.isDone()) {
+                    abandoned = true;
+                    toCancel = request;
+                }
+            }
+            if (toCancel != null) {
+                inFlight.remove(key, this);
+                toCancel.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Builds the cache key for a location. Coordinates are rounded to two decimals (roughly 1 km),
+     * which is finer than the forecast model grid, so nearby duplicates share an entry.
+     * The settings don't change the response (canonical units, full horizon), so they aren't part of the key.
+     */
+    private String cacheKey(Location location) {
+        return String.format(Locale.ROOT, "%.2f,%.2f", location.getLatitude(), location.getLongitude());
+    }
+
+    // Dynamic URL Building
+    // Assemble the full API URL by combining the base URL, location coordinates,
+    // and the requested variables. The units are always the canonical ones and the horizon is always the full one,
+    // the views convert units and cut the days locally, so changing those settings doesn't need a new request.
+    // The API accepts comma-separated lists of coordinates to fetch several locations at once.
+    private String buildUrl(String latitudes, String longitudes) {
+        return baseUrl + latitudes + longitudeUrl + longitudes
+                + "&current=temperature_2m,relative_humidity_2m,apparent_temperature,is_day,weathercode,windspeed_10m,rain,showers"
+                + "&current_units=temperature_2m,windspeed_10m,rain,showers"
+                + "&hourly=temperature_2m,relative_humidity_2m,is_day,weather_code,wind_speed_10m,wind_direction_10m,precipitation_probability,uv_index"
+                + "&daily=weather_code,temperature_2m_max,temperature_2m_min,sunrise,sunset"
+                // API settings
+                + "&timezone=auto"
+                + "&temperature_unit=" + UnitConverter.CANONICAL.temperature()
+                + "&wind_speed_unit=" + UnitConverter.CANONICAL.windSpeed()
+                + "&precipitation_unit=" + UnitConverter.CANONICAL.precipitation()
+                + "&forecast_days=" + MAX_FORECAST_DAYS;
+    }
+
+    private Forecast parseResponse(HttpFetcher.Response response, String key) {
+        if (response.isNotModified()) {
+            return keepCached(key);
+        } else if (response.statusCode() == 200) {
+            // If the request was successful (HTTP 200),
+            // use the Jackson mapper to parse the JSON response body
+            // into our Forecast.java object structure.
+            Forecast forecast = parseAndStore(response.body(), 0, response.body().length, key);
+            rememberValidators(key, response.validators());
+            return forecast;
+        } else {
+            out.println("API request failed with status code: " + response.statusCode());
+            out.println("Response Body: " + new String(response.body(), StandardCharsets.UTF_8));
             return null;
         }
     }
+
+    /**
+     * The forecast to show when the API can't be reached: the cached copy however old it is,
+     * or else the stored snapshot. Null if there is neither.
+     */
+    private Forecast fallback(String key) {
+        LruCache.Entry<Forecast> entry = cache.peek(key);
+        Forecast forecast = entry != null ? entry.value() : restoreSnapshot(key);
+        if (forecast != null) {
+            out.println("Serving the last known forecast for " + key);
+        }
+        return forecast;
+    }
+
+    private static void logFailure(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof CircuitBreaker.OpenException || cause instanceof TimeoutException) {
+            // Expected while the API is having trouble, no need for a stack trace
+            out.println("Forecast request failed: " + cause.getMessage());
+        } else {
+            cause.printStackTrace();
+        }
+    }
+
+    // The server confirmed that the cached forecast is still current. Returns it, or null if it was evicted meanwhile.
+    private Forecast keepCached(String key) {
+        LruCache.Entry<Forecast> entry = cache.peek(key);
+        if (entry == null) {
+            validators.remove(key);
+            return null;
+        }
+        out.println("Forecast for " + key + " not modified, keeping the cached copy");
+        return entry.value();
+    }
+
+    private HttpFetcher.Validators validatorsFor(String key) {
+        LruCache.Entry<HttpFetcher.Validators> entry = validators.peek(key);
+        return entry == null || cache.peek(key) == null ? null : entry.value();
+    }
+
+    private void rememberValidators(String key, HttpFetcher.Validators received) {
+        if (received.isEmpty()) {
+            validators.remove(key);
+        } else {
+            validators.put(key, received);
+        }
+    }
+
+    private Forecast parseAndStore(byte[] body, int offset, int length, String key) {
+        long start = System.nanoTime();
+        Forecast forecast = mapper.readValue(body, offset, length, Forecast.class);
+        MetricsRegistry.get().timer("forecast.parse").recordSince(start);
+
+        // Only keep responses that parsed fine, so startup never restores a broken snapshot
+        if (snapshotStore != null) {
+            snapshotStore.put(key, Arrays.copyOfRange(body, offset, offset + length));
+        }
+        return forecast;
+    }
 }
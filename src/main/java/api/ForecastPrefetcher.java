@@ -0,0 +1,110 @@
+package api;
+
+import models.Location;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.lang.System.out;
+
+/**
+ * Keeps the forecasts of the recently searched locations warm in the ForecastLookup cache,
+ * so that re-opening a recent location renders instantly from fresh data.
+ *
+ * On every check, all locations whose cached forecast is missing or about to expire are refreshed
+ * together in one batch request. The check interval and the "about to expire" threshold both get
+ * some random jitter, so refreshes don't all line up and burst at the same moment.
+ * The scheduler can be paused (e.g. while the window is minimized) and resumed.
+ */
+public class ForecastPrefetcher {
+    // How often to look for forecasts that need refreshing
+    private static final long CHECK_INTERVAL_MILLIS = 30_000;
+    // Refresh a forecast when it expires within this time...
+    private static final long REFRESH_LEAD_MILLIS = 120_000;
+    // ...plus up to this much random extra time
+    private static final long JITTER_MILLIS = 60_000;
+
+    private final ForecastLookup forecastLookup;
+    private final Supplier<List<Location>> locations;
+    private final ScheduledExecutorService scheduler;
+
+    private ScheduledFuture<?> nextCheck;
+    private boolean paused = true;
+
+    /**
+     * @param forecastLookup The lookup whose cache is kept warm.
+     * @param locations Supplies the locations to keep warm (called on the scheduler thread).
+     */
+    public ForecastPrefetcher(ForecastLookup forecastLookup, Supplier<List<Location>> locations) {
+        this.forecastLookup = forecastLookup;
+        this.locations = locations;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "forecast-prefetcher");
+            // Never keep the app alive just for prefetching
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts (or resumes) checking. The first check runs right away.
+     */
+    public synchronized void resume() {
+        if (!paused || scheduler.isShutdown()) return;
+        paused = false;
+        schedule(0);
+    }
+
+    /**
+     * Stops checking until resume() is called. A refresh that is already running still completes.
+     */
+    public synchronized void pause() {
+        paused = true;
+        if (nextCheck != null) {
+            nextCheck.cancel(false);
+            nextCheck = null;
+        }
+    }
+
+    // Stops the scheduler for good
+    public synchronized void shutdown() {
+        pause();
+        scheduler.shutdownNow();
+    }
+
+    private synchronized void schedule(long delayMillis) {
+        if (paused || scheduler.isShutdown()) return;
+        nextCheck = scheduler.schedule(this::check, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void check() {
+        try {
+            List<Location> due = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            for (Location location : locations.get()) {
+                long threshold = now + REFRESH_LEAD_MILLIS + ThreadLocalRandom.current().nextLong(JITTER_MILLIS);
+                if (forecastLookup.getCacheExpiry(location) <= threshold) {
+                    due.add(location);
+                }
+            }
+
+            if (!due.isEmpty()) {
+                out.println("Prefetching forecasts for " + due.size() + " recent location(s)");
+                // Wait for the batch, so a slow response doesn't lead to overlapping refreshes
+                forecastLookup.refreshForecasts(due).join();
+            }
+        } catch (Exception e) {
+            out.println("Prefetching forecasts failed: " + e.getMessage());
+        } finally {
+            // Spread the checks out a little as well
+            long jitter = ThreadLocalRandom.current().nextLong(-CHECK_INTERVAL_MILLIS / 4, CHECK_INTERVAL_MILLIS / 4);
+            schedule(CHECK_INTERVAL_MILLIS + jitter);
+        }
+    }
+}
@@ -8,17 +8,25 @@ package api;/*
  */
 import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import models.GeocodingResponse;
 import models.Location;
+import utils.CircuitBreaker;
+import utils.LruCache;
+import utils.MetricsRegistry;
 
 /*
     The Jackson library helps with handling (serializing/deserializing) JSON files,
@@ -32,66 +40,232 @@ import tools.jackson.databind.json.JsonMapper;
 import static java.lang.System.out;
 
 public class Geocoder {
-    private HttpClient client;
-    private HttpRequest request;
+    // Place names practically never change, so results can be kept for a long time.
+    // Empty results are cached too (so a typo isn't sent again and again), but for a shorter time.
+    private static final int CACHE_SIZE = 200;
+    private static final Duration CACHE_TTL = Duration.ofHours(24);
+    private static final Duration EMPTY_RESULT_TTL = Duration.ofMinutes(10);
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    // "45.81, 15.98", "45.81 15.98" or "-33.9;18.4": latitude and longitude in decimal degrees
+    private static final Pattern COORDINATES =
+            Pattern.compile("\\s*([-+]?\\d{1,2}(?:\\.\\d+)?)\\s*[,; ]\\s*([-+]?\\d{1,3}(?:\\.\\d+)?)\\s*");
+    // A typed point farther than this from every known place finds nothing
+    private static final double MAX_PLACE_DISTANCE_KM = 25;
+
+    // the app's shared HttpClient, wrapped in the compressing / revalidating response pipeline
+    private final HttpFetcher fetcher;
     private String numberOfResults = "5";
     private final ObjectMapper mapper;
     private String baseUrl = "https://geocoding-api.open-meteo.com/v1/search?name=";
 
-    public Geocoder() {
-        this.client = HttpClient.newHttpClient();
+    // Results of previous searches, keyed by the normalized query
+    private final LruCache<String, List<Location>> cache = new LruCache<>(CACHE_SIZE, CACHE_TTL);
+    // ETag / Last-Modified of the response behind each cache entry, so an expired entry can be revalidated
+    private final LruCache<String, HttpFetcher.Validators> validators = new LruCache<>(CACHE_SIZE, CACHE_TTL.multipliedBy(7));
+    // Optional offline index, searched before the cache and the API
+    private PlaceIndex placeIndex;
+    // Optional, names typed coordinates. Set from a background thread once its tree is built.
+    private volatile ReverseGeocoder reverseGeocoder;
+
+    public Geocoder(HttpClientService httpClientService) {
+        this.fetcher = httpClientService.getFetcher();
         // keep deserializing even if the fields in JSON and our Location class don't fully match
         this.mapper = JsonMapper.builder()
                 .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
                 .build();
+        // An expired search result is revalidated with the API before it is used, so it doesn't count as a hit
+        MetricsRegistry.get().gauge("geocode.cache.hit_ratio", cache::getFreshHitRatio);
+    }
+
+    /**
+     * Normalizes a search query so that the same place typed in different ways maps to the same cache entry:
+     * trimmed, inner whitespace collapsed, accents stripped ("Zürich" -> "zurich") and case-folded.
+     */
+    public static String normalizeQuery(String query) {
+        String decomposed = Normalizer.normalize(query.trim(), Normalizer.Form.NFKD);
+        String withoutAccents = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        return WHITESPACE.matcher(withoutAccents).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Points the geocoder at another server with the same API, e.g. a local stub for load tests.
+     * @param url The search endpoint without parameters, e.g. "http://localhost:9000/v1/search".
+     */
+    public void setApiUrl(String url) {
+        this.baseUrl = url + "?name=";
+    }
+
+    /**
+     * Sets the offline index that searches are answered from when it knows a matching place.
+     * Only queries it has no match for go to the API. Null turns offline search off.
+     */
+    public void setPlaceIndex(PlaceIndex placeIndex) {
+        this.placeIndex = placeIndex;
     }
 
+    /**
+     * Sets the reverse geocoder that typed coordinates ("45.81, 15.98") are looked up in: such a query returns
+     * the nearest known place. Without one coordinate queries find nothing. Null turns the lookup off.
+     */
+    public void setReverseGeocoder(ReverseGeocoder reverseGeocoder) {
+        this.reverseGeocoder = reverseGeocoder;
+    }
+
+    // Exposes the cache so its hit/miss counters can be inspected.
+    public LruCache<String, List<Location>> getCache() {
+        return cache;
+    }
+
+    /**
+     * Searches for locations matching the query, blocking until the API answers.
+     * Never call this from the JavaFX Application Thread, use searchLocationsByNameAsync instead.
+     */
     public List<Location> searchLocationsByName(String query){
+        try {
+            return searchLocationsByNameAsync(query).join();
+        } catch (CancellationException | CompletionException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Searches for locations matching the query without blocking the calling thread.
+     * Matches from the offline place index and cached results are returned right away. Otherwise the request is sent asynchronously and the
+     * response is parsed on the HttpClient's worker threads. An expired cache entry is revalidated with a
+     * conditional request if the server sent validators for it. Cancelling the returned future aborts
+     * the HTTP exchange, which is how a newer query replaces one that is still in flight.
+     * @return A future completed with the matching locations, or with an empty list if nothing was found or the request failed.
+     */
+    public CompletableFuture<List<Location>> searchLocationsByNameAsync(String query){
+        CompletableFuture<List<Location>> search = searchLocationsByNameOrFailAsync(query);
+        CompletableFuture<List<Location>> result = search.exceptionally(e -> Collections.emptyList());
+        result.whenComplete((locations, e) -> {
+            if (result.isCancelled()) {
+                search.cancel(true);
+            }
+        });
+        return result;
+    }
 
-        try{
-            // encode the query to ensure proper charset is used
-            String encodedQuery = URLEncoder.encode(query, StandardCharsets.UTF_8);
-
-            // the query is the only mandatory parameter, the api documentation mentions several optional parameters
-            // like count, format, language, open-meteo apikey (not needed for non-commercial use) etc.
-            String url = baseUrl + encodedQuery + "&count=" + numberOfResults;
-
-            // build the Http request with the GET method (means we're trying to collect a resource)
-            request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .GET()
-                    .build();
-
-            // then query the endpoint and handle the response as a String
-           HttpResponse<String> response = client.send(request, BodyHandlers.ofString());
-
-           // response code of "200 OK" indicates that everything went well with the http request & response
-           if (response.statusCode() == 200) {
-
-               // put the results into a GeocodingResponse helper class
-               GeocodingResponse geocodingResponse = mapper.readValue(response.body(), GeocodingResponse.class);
-
-               if (geocodingResponse != null && geocodingResponse.getResults() != null){
-                   return geocodingResponse.getResults();
-               } else {
-                   out.println("No results found for query: " + query);
-                   return Collections.emptyList();
-               }
-           } else {
-               out.println("API request failed with status code: " + response.statusCode());
-               out.println("Response Body: " + response.body());
-               return Collections.emptyList();
-           }
-
-        } catch (IOException | InterruptedException e){
-            out.println("Something went wrong while searching for locations: " + e.getMessage());
-            e.printStackTrace();
+    /**
+     * Same as searchLocationsByNameAsync, but a failed search is not passed off as "nothing found":
+     * if the API can't be reached or answers with an error and there is no expired result to fall back on,
+     * the future completes exceptionally. For callers that have to tell the two apart, e.g. the server mode.
+     */
+    public CompletableFuture<List<Location>> searchLocationsByNameOrFailAsync(String query){
+        // Coordinates have nothing for the search API to match, they are answered here
+        Matcher coordinates = COORDINATES.matcher(query);
+        if (coordinates.matches()) {
+            return CompletableFuture.completedFuture(locateCoordinates(
+                    Double.parseDouble(coordinates.group(1)), Double.parseDouble(coordinates.group(2))));
+        }
+
+        if (placeIndex != null) {
+            List<Location> local = placeIndex.search(query, Integer.parseInt(numberOfResults));
+            if (!local.isEmpty()) {
+                return CompletableFuture.completedFuture(local);
+            }
+        }
+
+        String key = normalizeQuery(query);
+        LruCache.Entry<List<Location>> cached = cache.get(key);
+        if (cached != null && !cached.isExpired()) {
+            return CompletableFuture.completedFuture(cached.value());
+        }
+        LruCache.Entry<HttpFetcher.Validators> conditional = cached == null ? null : validators.peek(key);
+
+        // encode the query to ensure proper charset is used
+        String encodedQuery = URLEncoder.encode(query, StandardCharsets.UTF_8);
+
+        // the query is the only mandatory parameter, the api documentation mentions several optional parameters
+        // like count, format, language, open-meteo apikey (not needed for non-commercial use) etc.
+        String url = baseUrl + encodedQuery + "&count=" + numberOfResults;
+
+        // send the GET request (means we're trying to collect a resource), conditional if we still have validators
+        long start = System.nanoTime();
+        CompletableFuture<HttpFetcher.Response> exchange =
+                fetcher.getAsync(URI.create(url), conditional == null ? null : conditional.value());
+        CompletableFuture<List<Location>> result = exchange
+                .thenApply(response -> parseResponse(response, query, key))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof CancellationException) {
+                        return Collections.emptyList();
+                    }
+                    if (cause instanceof tools.jackson.core.exc.JacksonIOException) {
+                        out.println("Something went wrong while parsing the response body.");
+                    } else if (cause instanceof CircuitBreaker.OpenException || cause instanceof TimeoutException
+                            || cause instanceof IOException) {
+                        out.println("Something went wrong while searching for locations: " + cause.getMessage());
+                    } else {
+                        out.println("Something went wrong while searching for locations: " + cause.getMessage());
+                        cause.printStackTrace();
+                    }
+                    // an expired result is still better than nothing while the API is unreachable
+                    if (cached != null) {
+                        return cached.value();
+                    }
+                    throw new CompletionException(cause);
+                });
+
+        result.whenComplete((locations, e) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            } else {
+                // Searches answered from the cache return above, so this is the latency of the API round trip
+                MetricsRegistry.get().timer("geocode").recordSince(start);
+            }
+        });
+        return result;
+    }
+
+    private List<Location> locateCoordinates(double latitude, double longitude) {
+        ReverseGeocoder reverse = reverseGeocoder;
+        if (reverse == null || latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
             return Collections.emptyList();
-        } catch (tools.jackson.core.exc.JacksonIOException e){
-            out.println("Something went wrong while parsing the response body.");
+        }
+        Location nearest = reverse.nearestWithin(latitude, longitude, MAX_PLACE_DISTANCE_KM);
+        return nearest == null ? Collections.emptyList() : List.of(nearest);
+    }
+
+    private List<Location> parseResponse(HttpFetcher.Response response, String query, String key) {
+        // "304 Not Modified" means our expired copy is still what the server would send
+        if (response.isNotModified()) {
+            LruCache.Entry<List<Location>> cached = cache.peek(key);
+            if (cached != null) {
+                cache.put(key, cached.value(), cached.value().isEmpty() ? EMPTY_RESULT_TTL : CACHE_TTL);
+                return cached.value();
+            }
             return Collections.emptyList();
         }
 
+        // response code of "200 OK" indicates that everything went well with the http request & response
+        if (response.statusCode() == 200) {
+            if (response.validators().isEmpty()) {
+                validators.remove(key);
+            } else {
+                validators.put(key, response.validators());
+            }
+
+            // put the results into a GeocodingResponse helper class
+            GeocodingResponse geocodingResponse = mapper.readValue(response.body(), GeocodingResponse.class);
+
+            if (geocodingResponse != null && geocodingResponse.getResults() != null){
+                List<Location> results = List.copyOf(geocodingResponse.getResults());
+                cache.put(key, results);
+                return results;
+            } else {
+                out.println("No results found for query: " + query);
+                cache.put(key, Collections.emptyList(), EMPTY_RESULT_TTL);
+                return Collections.emptyList();
+            }
+        } else {
+            out.println("API request failed with status code: " + response.statusCode());
+            out.println("Response Body: " + new String(response.body(), StandardCharsets.UTF_8));
+            throw new CompletionException(new IOException("The geocoding API answered with status " + response.statusCode()));
+        }
     }
 
 }
@@ -0,0 +1,114 @@
+package api;
+
+import utils.MetricsRegistry;
+import utils.Settings;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.lang.System.out;
+
+/**
+ * The one HttpClient used by everything in the api package.
+ *
+ * Sharing a single client means sharing its connection pool: the geocoding and forecast
+ * requests reuse the same TLS connections instead of each service opening its own.
+ * The client prefers HTTP/2, so concurrent requests to the same host are multiplexed over one
+ * connection, and it runs on a virtual-thread executor, so the blocking parts of a request
+ * (reading and inflating the body, parsing the JSON) don't tie up platform threads.
+ * prewarm() opens the connections to both Open-Meteo hosts ahead of the first real request.
+ */
+public class HttpClientService {
+    // Every host the app talks to. Connecting to them early means the first search / forecast skips DNS + TLS.
+    private static final List<URI> OPEN_METEO_HOSTS = List.of(
+            URI.create("https://api.open-meteo.com/"),
+            URI.create("https://geocoding-api.open-meteo.com/"));
+
+    private final ExecutorService executor;
+    private final HttpClient client;
+    private final HttpFetcher fetcher;
+
+    /**
+     * Creates the client from the user's settings:
+     * http_version (HTTP_2 or HTTP_1_1) and http_connect_timeout_seconds.
+     */
+    public HttpClientService(Settings settings) {
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.client = HttpClient.newBuilder()
+                .version(httpVersion(settings.getProperties().getProperty("http_version")))
+                .connectTimeout(Duration.ofSeconds(settings.getIntProperty("http_connect_timeout_seconds", 10)))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+        this.fetcher = new HttpFetcher(client);
+
+        MetricsRegistry metrics = MetricsRegistry.get();
+        metrics.gauge("http.requests", fetcher::getRequests);
+        metrics.gauge("http.retries", fetcher::getRetries);
+        metrics.gauge("http.hedges", fetcher::getHedges);
+        metrics.gauge("http.hedge_wins", fetcher::getHedgeWins);
+        metrics.gauge("http.timeouts", fetcher::getTimeouts);
+        metrics.gauge("http.bytes.wire", fetcher::getWireBytes);
+        metrics.gauge("http.bytes.decoded", fetcher::getDecodedBytes);
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    // The response pipeline (compression, revalidation) on top of the shared client
+    public HttpFetcher getFetcher() {
+        return fetcher;
+    }
+
+    /**
+     * Opens a connection to every Open-Meteo host without waiting for it.
+     * A HEAD request is the cheapest way to get the client to resolve, connect and finish the TLS
+     * handshake (and the HTTP/2 upgrade); the pooled connection is then reused by the first real request.
+     * Failures are only logged, the real request will simply connect on its own.
+     */
+    public CompletableFuture<Void> prewarm() {
+        CompletableFuture<?>[] connections = OPEN_METEO_HOSTS.stream()
+                .map(host -> {
+                    long start = System.nanoTime();
+                    HttpRequest request = HttpRequest.newBuilder(host)
+                            .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                            .build();
+                    return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                            .thenAccept(response -> out.printf("Connected to %s (%s) in %.0f ms%n",
+                                    host.getHost(), response.version(), (System.nanoTime() - start) / 1_000_000.0))
+                            .exceptionally(e -> {
+                                out.println("Could not pre-connect to " + host.getHost() + ": " + e.getMessage());
+                                return null;
+                            });
+                })
+                .toArray(CompletableFuture<?>[]::new);
+        return CompletableFuture.allOf(connections);
+    }
+
+    /**
+     * Aborts whatever is still in flight and stops the executor. Called when the app exits.
+     */
+    public void shutdown() {
+        client.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private static HttpClient.Version httpVersion(String value) {
+        if (value != null) {
+            try {
+                return HttpClient.Version.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                out.println("Invalid value for setting http_version: " + value);
+            }
+        }
+        return HttpClient.Version.HTTP_2;
+    }
+}
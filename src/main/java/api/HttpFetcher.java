@@ -0,0 +1,388 @@
+package api;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import utils.CircuitBreaker;
+import utils.Histogram;
+import utils.MetricsRegistry;
+
+import static java.lang.System.out;
+
+/**
+ * The response pipeline shared by ForecastLookup and Geocoder.
+ *
+ * Every request asks for a gzip or deflate compressed response (multi-day hourly JSON
+ * shrinks to a fraction of its size), and the body is decompressed while it is read off
+ * the network, so the compressed bytes are never buffered as a whole.
+ * Requests can carry the validators (ETag / Last-Modified) of a cached response, in which case
+ * a server that supports conditional requests answers with 304 Not Modified and no body.
+ * The size on the wire and the time spent decompressing are reported for every request.
+ *
+ * On top of that, every call goes through a small resilience layer, with the state kept per host:
+ * - each attempt has a deadline derived from the recently observed latencies (a few times the p99),
+ * - failed attempts (errors, timeouts, 429 and 5xx) are retried a bounded number of times with jittered backoff,
+ * - an attempt that is slower than the p95 gets a hedged duplicate request, and whichever answers first wins,
+ * - after repeated failures a circuit breaker opens and calls fail fast with CircuitBreaker.OpenException,
+ *   so the services can fall back to their cached data right away.
+ */
+public class HttpFetcher {
+
+    /**
+     * The validators of a previous response, sent along to revalidate it.
+     */
+    public record Validators(String etag, String lastModified) {
+        public boolean isEmpty() {
+            return etag == null && lastModified == null;
+        }
+    }
+
+    /**
+     * A fully read and decompressed response.
+     * @param body The decompressed body, empty for a 304 Not Modified response.
+     * @param wireBytes The number of (possibly compressed) body bytes received.
+     * @param decodeNanos The time spent reading and decompressing the body.
+     */
+    public record Response(int statusCode, byte[] body, Validators validators, long wireBytes, long decodeNanos) {
+        public boolean isNotModified() {
+            return statusCode == 304;
+        }
+    }
+
+    // Latencies kept per host to derive deadlines and hedging delays from
+    private static final int LATENCY_WINDOW = 200;
+    // Below this many samples the percentiles mean little, so the fixed default deadline is used and nothing is hedged
+    private static final int MIN_SAMPLES = 20;
+    private static final long DEFAULT_DEADLINE_MILLIS = 10_000;
+    private static final long MIN_DEADLINE_MILLIS = 2_000;
+    private static final long MAX_DEADLINE_MILLIS = 20_000;
+    private static final long MIN_HEDGE_DELAY_MILLIS = 50;
+    // Retries after the first attempt, with exponential backoff and full jitter
+    private static final int MAX_RETRIES = 2;
+    private static final long BACKOFF_BASE_MILLIS = 250;
+    // Consecutive failed attempts that open a host's circuit breaker, and for how long
+    private static final int BREAKER_THRESHOLD = 5;
+    private static final long BREAKER_OPEN_MILLIS = 30_000;
+
+    /**
+     * The resilience state of one host.
+     */
+    private record Upstream(Histogram latency, CircuitBreaker breaker) {
+        long deadlineMillis() {
+            if (latency.getCount() < MIN_SAMPLES) return DEFAULT_DEADLINE_MILLIS;
+            return Math.max(MIN_DEADLINE_MILLIS, Math.min(MAX_DEADLINE_MILLIS, percentileMillis(0.99) * 3));
+        }
+
+        // How long to wait for an answer before sending a hedged duplicate, or -1 to not hedge
+        long hedgeDelayMillis() {
+            if (latency.getCount() < MIN_SAMPLES) return -1;
+            return Math.max(MIN_HEDGE_DELAY_MILLIS, percentileMillis(0.95));
+        }
+
+        private long percentileMillis(double p) {
+            return TimeUnit.NANOSECONDS.toMillis(latency.percentile(p));
+        }
+    }
+
+    private final HttpClient client;
+    private final ConcurrentHashMap<String, Upstream> upstreams = new ConcurrentHashMap<>();
+
+    // HTTP exchanges actually sent, including retries and hedges
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    // Response bytes as received and after decompression, to see what compression saves
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final AtomicLong decodedBytes = new AtomicLong();
+
+    public HttpFetcher(HttpClient client) {
+        this.client = client;
+    }
+
+    public CompletableFuture<Response> getAsync(URI uri) {
+        return getAsync(uri, null);
+    }
+
+    /**
+     * Sends a GET request and reads the whole (decompressed) response body, retrying and hedging as needed.
+     * The future fails with CircuitBreaker.OpenException if the host's breaker is open, or with the last
+     * error once all attempts have failed. A 429 or 5xx response is still returned after the last retry.
+     * Cancelling the returned future aborts all HTTP exchanges of the call.
+     * @param validators The validators of a cached copy to revalidate, or null for a plain request.
+     */
+    public CompletableFuture<Response> getAsync(URI uri, Validators validators) {
+        Upstream upstream = upstreams.computeIfAbsent(uri.getHost(), host ->
+                new Upstream(new Histogram(LATENCY_WINDOW), new CircuitBreaker(host, BREAKER_THRESHOLD, BREAKER_OPEN_MILLIS)));
+        Call call = new Call(uri, validators, upstream);
+        call.attempt(0);
+        return call.result;
+    }
+
+    // Statistics of the resilience layer
+    public long getRequests() { return requests.get(); }
+    public long getRetries() { return retries.get(); }
+    public long getHedges() { return hedges.get(); }
+    public long getHedgeWins() { return hedgeWins.get(); }
+    public long getTimeouts() { return timeouts.get(); }
+    public long getWireBytes() { return wireBytes.get(); }
+    public long getDecodedBytes() { return decodedBytes.get(); }
+
+    // The latencies (ns) of the most recent attempts to a host, or null if nothing was sent to it yet
+    public Histogram getLatency(String host) {
+        Upstream upstream = upstreams.get(host);
+        return upstream == null ? null : upstream.latency();
+    }
+
+    public CircuitBreaker.State getBreakerState(String host) {
+        Upstream upstream = upstreams.get(host);
+        return upstream == null ? CircuitBreaker.State.CLOSED : upstream.breaker().getState();
+    }
+
+    private static boolean isRetryable(Response response) {
+        return response.statusCode() == 429 || response.statusCode() >= 500;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * One logical call: a series of attempts, each of which may send a hedged duplicate.
+     */
+    private class Call {
+        private final URI uri;
+        private final Validators validators;
+        private final Upstream upstream;
+        private final CompletableFuture<Response> result = new CompletableFuture<>();
+        // Every exchange that may still be running, so they can all be aborted once the call is decided
+        private final List<CompletableFuture<Response>> exchanges = new ArrayList<>();
+
+        Call(URI uri, Validators validators, Upstream upstream) {
+            this.uri = uri;
+            this.validators = validators;
+            this.upstream = upstream;
+            result.whenComplete((response, e) -> cancelExchanges());
+        }
+
+        void attempt(int number) {
+            if (result.isDone()) return;
+            if (!upstream.breaker().allowRequest()) {
+                result.completeExceptionally(upstream.breaker().openException());
+                return;
+            }
+
+            CompletableFuture<Response> attempt = new CompletableFuture<>();
+            long start = System.nanoTime();
+            CompletableFuture<Response> primary = send();
+            primary.whenComplete((response, e) -> {
+                if (e == null) {
+                    attempt.complete(response);
+                } else if (!hedgePending()) {
+                    attempt.completeExceptionally(unwrap(e));
+                }
+            });
+
+            long hedgeDelay = upstream.hedgeDelayMillis();
+            if (hedgeDelay >= 0) {
+                CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.MILLISECONDS).execute(() -> {
+                    if (attempt.isDone() || result.isDone()) return;
+                    hedges.incrementAndGet();
+                    CompletableFuture<Response> hedge = send();
+                    hedge.whenComplete((response, e) -> {
+                        if (e == null) {
+                            if (attempt.complete(response)) hedgeWins.incrementAndGet();
+                        } else if (primary.isCompletedExceptionally()) {
+                            attempt.completeExceptionally(unwrap(e));
+                        }
+                    });
+                });
+            }
+
+            attempt.orTimeout(upstream.deadlineMillis(), TimeUnit.MILLISECONDS).whenComplete((response, e) -> {
+                cancelExchanges();
+                if (result.isDone()) {
+                    // Cancelled by the caller, which says nothing about the upstream's health
+                    upstream.breaker().onAbandoned();
+                    return;
+                }
+
+                // Failed and timed-out attempts count too. Leaving them out would make a struggling upstream look
+                // fast and tighten the deadline exactly when it should be loosened.
+                upstream.latency().recordSince(start);
+                if (e == null && !isRetryable(response)) {
+                    upstream.breaker().onSuccess();
+                    result.complete(response);
+                    return;
+                }
+
+                upstream.breaker().onFailure();
+                Throwable cause = e == null ? null : unwrap(e);
+                if (cause instanceof TimeoutException) {
+                    timeouts.incrementAndGet();
+                }
+                if (number < MAX_RETRIES) {
+                    long backoff = ThreadLocalRandom.current().nextLong(BACKOFF_BASE_MILLIS << number);
+                    out.println("Request to " + uri.getHost() + " failed (" + (e == null ? "status " + response.statusCode() : cause)
+                            + "), retrying in " + backoff + " ms");
+                    retries.incrementAndGet();
+                    CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS).execute(() -> attempt(number + 1));
+                } else if (e == null) {
+                    result.complete(response);
+                } else {
+                    result.completeExceptionally(cause);
+                }
+            });
+        }
+
+        // A failed primary only fails the attempt if no hedge can still answer. Hedges are sent later,
+        // so if the primary failed before the hedge was sent, the attempt fails and is retried instead.
+        private boolean hedgePending() {
+            synchronized (exchanges) {
+                return exchanges.size() > 1 && exchanges.stream().anyMatch(exchange -> !exchange.isDone());
+            }
+        }
+
+        private CompletableFuture<Response> send() {
+            CompletableFuture<Response> exchange = sendOnce(uri, validators);
+            synchronized (exchanges) {
+                exchanges.add(exchange);
+            }
+            // The call may have been cancelled while this was being sent
+            if (result.isDone()) {
+                exchange.cancel(true);
+            }
+            return exchange;
+        }
+
+        private void cancelExchanges() {
+            List<CompletableFuture<Response>> running;
+            synchronized (exchanges) {
+                running = new ArrayList<>(exchanges);
+                exchanges.clear();
+            }
+            for (CompletableFuture<Response> exchange : running) {
+                if (!exchange.isDone()) exchange.cancel(true);
+            }
+        }
+    }
+
+    // Sends a single request and reads its body. Cancelling the returned future aborts the HTTP exchange.
+    private CompletableFuture<Response> sendOnce(URI uri, Validators validators) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(uri)
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+        if (validators != null) {
+            if (validators.etag() != null) builder.header("If-None-Match", validators.etag());
+            if (validators.lastModified() != null) builder.header("If-Modified-Since", validators.lastModified());
+        }
+
+        requests.incrementAndGet();
+        CompletableFuture<HttpResponse<InputStream>> exchange =
+                client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        CompletableFuture<Response> result = exchange.thenApply(this::read);
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private Response read(HttpResponse<InputStream> response) {
+        long start = System.nanoTime();
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("identity").trim();
+        // A 304 or HEAD response has no body even if it names the encoding the full response would have
+        boolean hasBody = response.statusCode() != 304 && !response.request().method().equals("HEAD");
+        try (CountingInputStream wire = new CountingInputStream(response.body());
+             InputStream body = hasBody ? decoder(encoding, wire) : wire) {
+            byte[] bytes = body.readAllBytes();
+            long decodeNanos = System.nanoTime() - start;
+
+            Validators validators = new Validators(
+                    response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null));
+
+            MetricsRegistry.get().timer("http.decode").record(decodeNanos);
+            wireBytes.addAndGet(wire.count);
+            decodedBytes.addAndGet(bytes.length);
+            return new Response(response.statusCode(), bytes, validators, wire.count, decodeNanos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Wraps the raw body in a decompressing stream matching the Content-Encoding header.
+    // An empty body is returned as it is, GZIPInputStream would fail on the missing header.
+    private static InputStream decoder(String encoding, InputStream in) throws IOException {
+        String name = encoding.toLowerCase();
+        if (!name.equals("gzip") && !name.equals("x-gzip") && !name.equals("deflate")) {
+            return in;
+        }
+        BufferedInputStream buffered = new BufferedInputStream(in, 8192);
+        buffered.mark(1);
+        if (buffered.read() < 0) {
+            return buffered;
+        }
+        buffered.reset();
+        switch (name) {
+            case "gzip", "x-gzip":
+                return new GZIPInputStream(buffered, 8192);
+            case "deflate":
+                // "deflate" should be zlib-wrapped, but some servers send a raw deflate stream. Peek at the header.
+                buffered.mark(2);
+                int cmf = buffered.read();
+                int flg = buffered.read();
+                buffered.reset();
+                boolean zlibWrapped = cmf >= 0 && flg >= 0 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+                return new InflaterInputStream(buffered, new Inflater(!zlibWrapped), 8192);
+            default:
+                return buffered;
+        }
+    }
+
+    // Counts the bytes that actually came over the network, before decompression
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) count += read;
+            return read;
+        }
+    }
+}
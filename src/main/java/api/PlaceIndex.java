@@ -0,0 +1,329 @@
+package api;
+
+import models.Location;
+import utils.MetricsRegistry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An offline place search over a file compiled from a GeoNames cities dump (see cli.PlaceIndexImporter).
+ *
+ * The file is memory-mapped and searched where it lies, so opening it costs next to nothing and it never
+ * has to fit on the heap. Only the places a search returns are decoded into Location objects.
+ *
+ * Layout (big-endian):
+ * - header: magic, version, number of keys, number of places, and where the key and place sections start
+ * - entries: one fixed-size entry per key, sorted by key bytes: [key offset][place offset][population]
+ * - keys: every searchable name, normalized like Geocoder.normalizeQuery: [u16 length][UTF-8 bytes]
+ * - places: [id][latitude e5][longitude e5][population][elevation][country code][name][admin1]
+ *
+ * A place has one key per distinct normalized name (its name, its ASCII name and optionally its alternate names).
+ * UTF-8 byte order equals code point order, so a prefix search is a binary search for the first key
+ * at or after the prefix followed by a scan while the keys still start with it. Population is stored in the
+ * entry, so ranking the matches doesn't touch the place records.
+ */
+public class PlaceIndex implements AutoCloseable {
+    private static final int MAGIC = 0x57504958; // "WPIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int ENTRY_BYTES = 12;
+    // Coordinates are stored as integers in 1e-5 degrees (about a metre)
+    private static final double COORDINATE_SCALE = 1e5;
+    // Like the geocoding API: one character finds nothing, two only exact names, three or more are prefixes
+    private static final int MIN_QUERY_LENGTH = 2;
+    private static final int MIN_PREFIX_LENGTH = 3;
+
+    /**
+     * A place to write into the index, with all the names it should be found by.
+     */
+    public record Place(Location location, List<String> names) {}
+
+    /**
+     * Receives the places of the index one by one (see forEachPlace).
+     */
+    public interface PlaceVisitor {
+        void visit(int place, double latitude, double longitude);
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int keyCount;
+    private final int placeCount;
+    private final int keysOffset;
+    private final int placesOffset;
+    // Country names by ISO code, they are derived rather than stored
+    private final Map<String, String> countryNames = new ConcurrentHashMap<>();
+
+    private PlaceIndex(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a place index, or one written by another version");
+        }
+        this.keyCount = buffer.getInt(8);
+        this.placeCount = buffer.getInt(12);
+        this.keysOffset = buffer.getInt(16);
+        this.placesOffset = buffer.getInt(20);
+    }
+
+    /**
+     * Maps the index file. Nothing is read up front apart from the header.
+     * @return The index, or null if the file doesn't exist or can't be used.
+     */
+    public static PlaceIndex open(Path file) {
+        if (!Files.isRegularFile(file)) return null;
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                PlaceIndex index = new PlaceIndex(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                System.out.println("Opened the offline place index " + file + " (" + index.placeCount + " places)");
+                return index;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not open the offline place index " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public int getPlaceCount() {
+        return placeCount;
+    }
+
+    /**
+     * Walks all places in file order, reading only their coordinates.
+     * The place handed to the visitor is its offset, which placeAt turns into a Location.
+     */
+    public void forEachPlace(PlaceVisitor visitor) {
+        int position = placesOffset;
+        for (int i = 0; i < placeCount; i++) {
+            visitor.visit(position - placesOffset, buffer.getInt(position + 4) / COORDINATE_SCALE,
+                    buffer.getInt(position + 8) / COORDINATE_SCALE);
+            int nameLength = Short.toUnsignedInt(buffer.getShort(position + 20));
+            int admin1At = position + 22 + nameLength;
+            position = admin1At + 2 + Short.toUnsignedInt(buffer.getShort(admin1At));
+        }
+    }
+
+    // Decodes the place at the given offset (from forEachPlace)
+    public Location placeAt(int place) {
+        return readPlace(place);
+    }
+
+    /**
+     * Finds the places whose name starts with the query (or equals it, for two-character queries),
+     * ignoring case, accents and extra whitespace. Exact names come first, then the most populous places.
+     * @return Up to limit places, empty if nothing matches.
+     */
+    public List<Location> search(String query, int limit) {
+        long start = System.nanoTime();
+        String normalized = Geocoder.normalizeQuery(query);
+        if (normalized.length() < MIN_QUERY_LENGTH || limit <= 0) return List.of();
+        boolean exactOnly = normalized.length() < MIN_PREFIX_LENGTH;
+        byte[] prefix = normalized.getBytes(StandardCharsets.UTF_8);
+
+        // The best matches so far, the weakest on top so it can be replaced
+        PriorityQueue<long[]> best = new PriorityQueue<>(Comparator.comparingLong(match -> match[0]));
+        Set<Integer> queued = new HashSet<>();
+        for (int i = lowerBound(prefix); i < keyCount; i++) {
+            int entry = HEADER_BYTES + i * ENTRY_BYTES;
+            int key = keysOffset + buffer.getInt(entry);
+            int keyLength = Short.toUnsignedInt(buffer.getShort(key));
+            if (!startsWith(key + 2, keyLength, prefix)) break;
+            boolean exact = keyLength == prefix.length;
+            // The exact key sorts before all longer ones, so past it only prefix matches follow
+            if (exactOnly && !exact) break;
+
+            // An exact name outranks any prefix match, then the population decides
+            long score = (exact ? 1L << 32 : 0) + Integer.toUnsignedLong(buffer.getInt(entry + 8));
+            boolean full = best.size() == limit;
+            if (full && score <= best.peek()[0]) continue;
+            int place = buffer.getInt(entry + 4);
+            // A place found under another of its names already has its best score
+            if (!queued.add(place)) continue;
+            if (full) {
+                queued.remove((int) best.poll()[1]);
+            }
+            best.add(new long[] {score, place});
+        }
+
+        long[][] matches = best.toArray(long[][]::new);
+        Arrays.sort(matches, Comparator.comparingLong((long[] match) -> match[0]).reversed());
+        List<Location> results = new ArrayList<>(matches.length);
+        for (long[] match : matches) {
+            results.add(readPlace((int) match[1]));
+        }
+        MetricsRegistry.get().timer("geocode.offline").recordSince(start);
+        return results;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Index of the first key that is not smaller than the prefix
+    private int lowerBound(byte[] prefix) {
+        int low = 0;
+        int high = keyCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int key = keysOffset + buffer.getInt(HEADER_BYTES + mid * ENTRY_BYTES);
+            if (compare(key + 2, Short.toUnsignedInt(buffer.getShort(key)), prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int compare(int position, int length, byte[] other) {
+        int n = Math.min(length, other.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Integer.compare(buffer.get(position + i) & 0xFF, other[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(length, other.length);
+    }
+
+    private boolean startsWith(int position, int length, byte[] prefix) {
+        if (length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(position + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private Location readPlace(int offset) {
+        int position = placesOffset + offset;
+        Location location = new Location();
+        location.setId(buffer.getInt(position));
+        location.setLatitude(buffer.getInt(position + 4) / COORDINATE_SCALE);
+        location.setLongitude(buffer.getInt(position + 8) / COORDINATE_SCALE);
+        location.setPopulation(Integer.toUnsignedLong(buffer.getInt(position + 12)));
+        location.setElevation(buffer.getShort(position + 16));
+        String countryCode = new String(new byte[] {buffer.get(position + 18), buffer.get(position + 19)}, StandardCharsets.US_ASCII);
+        location.setCountryCode(countryCode);
+        location.setCountry(countryNames.computeIfAbsent(countryCode,
+                code -> Locale.of("", code).getDisplayCountry(Locale.ENGLISH)));
+        position += 20;
+        int nameLength = Short.toUnsignedInt(buffer.getShort(position));
+        location.setName(readString(position + 2, nameLength));
+        position += 2 + nameLength;
+        int admin1Length = Short.toUnsignedInt(buffer.getShort(position));
+        if (admin1Length > 0) {
+            location.setAdmin1(readString(position + 2, admin1Length));
+        }
+        return location;
+    }
+
+    private String readString(int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes an index with the given places. The file is written next to the target and moved into place
+     * when complete, so a running app never maps a half-written index.
+     */
+    public static void write(Path file, List<Place> places) throws IOException {
+        // Every (normalized name, place) pair, sorted by name bytes. Bytes are compared unsigned, like in search.
+        record Key(byte[] name, int place, int population) {}
+        List<Key> keys = new ArrayList<>();
+        ByteBuffer placeBytes = ByteBuffer.allocate(1 << 16);
+        int[] placeOffsets = new int[places.size()];
+        for (int p = 0; p < places.size(); p++) {
+            Location location = places.get(p).location();
+            byte[] name = truncate(location.getName());
+            byte[] admin1 = truncate(location.getAdmin1());
+            placeBytes = ensureCapacity(placeBytes, 24 + name.length + admin1.length);
+            placeOffsets[p] = placeBytes.position();
+            String countryCode = location.getCountryCode() == null || location.getCountryCode().length() != 2
+                    ? "  " : location.getCountryCode();
+            placeBytes.putInt(location.getId())
+                    .putInt((int) Math.round(location.getLatitude() * COORDINATE_SCALE))
+                    .putInt((int) Math.round(location.getLongitude() * COORDINATE_SCALE))
+                    .putInt((int) Math.min(location.getPopulation(), 0xFFFFFFFFL))
+                    .putShort((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, location.getElevation())))
+                    .put(countryCode.getBytes(StandardCharsets.US_ASCII), 0, 2)
+                    .putShort((short) name.length).put(name)
+                    .putShort((short) admin1.length).put(admin1);
+
+            int population = (int) Math.min(location.getPopulation(), 0xFFFFFFFFL);
+            Set<String> normalized = new LinkedHashSet<>();
+            for (String alias : places.get(p).names()) {
+                if (alias != null && !alias.isBlank()) normalized.add(Geocoder.normalizeQuery(alias));
+            }
+            for (String alias : normalized) {
+                keys.add(new Key(truncate(alias), p, population));
+            }
+        }
+        keys.sort((a, b) -> Arrays.compareUnsigned(a.name(), b.name()));
+
+        int keyBytes = 0;
+        for (Key key : keys) {
+            keyBytes += 2 + key.name().length;
+        }
+        long entriesEnd = HEADER_BYTES + (long) keys.size() * ENTRY_BYTES;
+        long total = entriesEnd + keyBytes + placeBytes.position();
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Too many places for one index file (" + total + " bytes)");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) total);
+        out.putInt(MAGIC).putInt(VERSION).putInt(keys.size()).putInt(places.size())
+                .putInt((int) entriesEnd).putInt((int) entriesEnd + keyBytes);
+        int keyOffset = 0;
+        for (Key key : keys) {
+            out.putInt(keyOffset).putInt(placeOffsets[key.place()]).putInt(key.population());
+            keyOffset += 2 + key.name().length;
+        }
+        for (Key key : keys) {
+            out.putShort((short) key.name().length).put(key.name());
+        }
+        out.put(placeBytes.flip());
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, out.array());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Names are stored with a 16-bit length. Real ones are far shorter, 1000 characters fit in any case.
+    private static byte[] truncate(String value) {
+        if (value == null) return new byte[0];
+        return (value.length() > 1000 ? value.substring(0, 1000) : value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int needed) {
+        if (buffer.remaining() >= needed) return buffer;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        return larger.put(buffer.flip());
+    }
+}
@@ -0,0 +1,307 @@
+package api;
+
+import models.Location;
+import utils.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Turns coordinates into the nearest known named places, without a network call.
+ *
+ * The known places are the offline place index (see PlaceIndex), if there is one, and the user's recent searches.
+ * The index's places go into a k-d tree built once in the constructor. The recent searches are only a handful
+ * and change all the time, so they are read from the supplier and checked one by one on every query.
+ *
+ * Points are stored as 3D unit vectors rather than latitude/longitude, so there is no seam at the antimeridian
+ * and no distortion near the poles. The straight-line (chord) distance between two unit vectors grows with the
+ * great-circle distance, so the tree can search with plain Euclidean distances and only the results are
+ * converted to kilometres.
+ *
+ * The tree is implicit: the points are reordered so that the node of every range [lo, hi) is its middle element,
+ * with the smaller half of its split axis to the left and the larger to the right. No node objects, three doubles
+ * and an int per place.
+ */
+public class ReverseGeocoder {
+    // Mean earth radius
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    /**
+     * A place and its great-circle distance from the queried point.
+     */
+    public record Match(Location location, double distanceKm) {}
+
+    private final PlaceIndex placeIndex;
+    private final Supplier<List<Location>> recentLocations;
+    // x, y, z of every index place, in tree order
+    private final double[] points;
+    // The index place (see PlaceIndex.placeAt) of every point, in tree order
+    private final int[] places;
+    // Split axis (0 = x, 1 = y, 2 = z) of the node in the middle of each range
+    private final byte[] axes;
+
+    /**
+     * Builds the tree over the index's places. Takes a while for a large index, so don't call it on the FX thread.
+     * @param placeIndex The offline place index, or null to use only the recent searches.
+     * @param recentLocations The recent searches, or null.
+     */
+    public ReverseGeocoder(PlaceIndex placeIndex, Supplier<List<Location>> recentLocations) {
+        long start = System.nanoTime();
+        this.placeIndex = placeIndex;
+        this.recentLocations = recentLocations;
+        int count = placeIndex == null ? 0 : placeIndex.getPlaceCount();
+        this.points = new double[count * 3];
+        this.places = new int[count];
+        this.axes = new byte[count];
+        if (placeIndex != null) {
+            int[] next = {0};
+            placeIndex.forEachPlace((place, latitude, longitude) -> {
+                toUnitVector(latitude, longitude, points, next[0] * 3);
+                places[next[0]++] = place;
+            });
+            build(0, count);
+            System.out.printf("Built the reverse geocoding tree over %d places in %.0f ms%n",
+                    count, (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    /**
+     * Returns the known place nearest to the coordinates, or null if no place is within maxDistanceKm.
+     */
+    public Location nearestWithin(double latitude, double longitude, double maxDistanceKm) {
+        List<Match> matches = nearest(latitude, longitude, 1);
+        return matches.isEmpty() || matches.get(0).distanceKm() > maxDistanceKm ? null : matches.get(0).location();
+    }
+
+    /**
+     * Returns the count known places nearest to the coordinates, closest first.
+     */
+    public List<Match> nearest(double latitude, double longitude, int count) {
+        long start = System.nanoTime();
+        double[] query = toUnitVector(latitude, longitude, new double[3], 0);
+        List<Location> recent = recent();
+        // A recent search is usually in the index too, ask for enough extra places to drop those duplicates
+        Neighbours neighbours = new Neighbours(count + recent.size());
+        searchNearest(0, places.length, query, neighbours);
+
+        List<Match> recentMatches = new ArrayList<>();
+        for (Location location : recent) {
+            recentMatches.add(new Match(location, toKm(chordSquared(query, location))));
+        }
+        List<Match> indexMatches = new ArrayList<>();
+        for (int i = 0; i < neighbours.size; i++) {
+            indexMatches.add(new Match(placeIndex.placeAt(places[neighbours.points[i]]), toKm(neighbours.distances[i])));
+        }
+        List<Match> result = closestDistinct(recentMatches, indexMatches, count);
+        MetricsRegistry.get().timer("geocode.reverse").recordSince(start);
+        return result;
+    }
+
+    /**
+     * Returns all known places within radiusKm of the coordinates, closest first.
+     */
+    public List<Match> within(double latitude, double longitude, double radiusKm) {
+        long start = System.nanoTime();
+        double[] query = toUnitVector(latitude, longitude, new double[3], 0);
+        double radius = toChordSquared(radiusKm);
+
+        List<Match> recentMatches = new ArrayList<>();
+        for (Location location : recent()) {
+            double distance = chordSquared(query, location);
+            if (distance <= radius) recentMatches.add(new Match(location, toKm(distance)));
+        }
+        List<Integer> found = new ArrayList<>();
+        searchWithin(0, places.length, query, radius, found);
+        List<Match> indexMatches = new ArrayList<>();
+        for (int point : found) {
+            indexMatches.add(new Match(placeIndex.placeAt(places[point]), toKm(distanceSquared(query, point))));
+        }
+        List<Match> result = closestDistinct(recentMatches, indexMatches, Integer.MAX_VALUE);
+        MetricsRegistry.get().timer("geocode.reverse").recordSince(start);
+        return result;
+    }
+
+    // Splits [lo, hi) at its middle along the axis where the points spread the most, then does the same for both halves
+    private void build(int lo, int hi) {
+        if (hi - lo < 2) return;
+        double[] min = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (int i = lo; i < hi; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                double value = points[i * 3 + axis];
+                if (value < min[axis]) min[axis] = value;
+                if (value > max[axis]) max[axis] = value;
+            }
+        }
+        int axis = 0;
+        for (int a = 1; a < 3; a++) {
+            if (max[a] - min[a] > max[axis] - min[axis]) axis = a;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, axis);
+        axes[mid] = (byte) axis;
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    // Quickselect: moves the k-th smallest point along the axis to k, smaller ones before it and larger ones after
+    private void select(int lo, int hi, int k, int axis) {
+        while (lo < hi) {
+            double pivot = points[((lo + hi) >>> 1) * 3 + axis];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (points[i * 3 + axis] < pivot) i++;
+                while (points[j * 3 + axis] > pivot) j--;
+                if (i <= j) swap(i++, j--);
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int a, int b) {
+        for (int axis = 0; axis < 3; axis++) {
+            double point = points[a * 3 + axis];
+            points[a * 3 + axis] = points[b * 3 + axis];
+            points[b * 3 + axis] = point;
+        }
+        int place = places[a];
+        places[a] = places[b];
+        places[b] = place;
+    }
+
+    private void searchNearest(int lo, int hi, double[] query, Neighbours neighbours) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        neighbours.offer(mid, distanceSquared(query, mid));
+        if (hi - lo == 1) return;
+
+        int axis = axes[mid];
+        double offset = query[axis] - points[mid * 3 + axis];
+        // The half the query is in first, the other half only if it can still hold something closer
+        if (offset < 0) {
+            searchNearest(lo, mid, query, neighbours);
+            if (offset * offset < neighbours.worst()) searchNearest(mid + 1, hi, query, neighbours);
+        } else {
+            searchNearest(mid + 1, hi, query, neighbours);
+            if (offset * offset < neighbours.worst()) searchNearest(lo, mid, query, neighbours);
+        }
+    }
+
+    private void searchWithin(int lo, int hi, double[] query, double radius, List<Integer> found) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        if (distanceSquared(query, mid) <= radius) found.add(mid);
+        if (hi - lo == 1) return;
+
+        int axis = axes[mid];
+        double offset = query[axis] - points[mid * 3 + axis];
+        if (offset < 0 || offset * offset <= radius) searchWithin(lo, mid, query, radius, found);
+        if (offset >= 0 || offset * offset <= radius) searchWithin(mid + 1, hi, query, radius, found);
+    }
+
+    private List<Location> recent() {
+        List<Location> recent = recentLocations == null ? null : recentLocations.get();
+        return recent == null ? List.of() : recent;
+    }
+
+    // Merges the matches, closest first, and drops places that appear twice. A recent search that is also in the index
+    // keeps its recent copy, which is what the user saw and picked, even if the index has it a little closer.
+    private static List<Match> closestDistinct(List<Match> recent, List<Match> indexed, int count) {
+        Set<Integer> recentIds = new HashSet<>();
+        for (Match match : recent) {
+            recentIds.add(match.location().getId());
+        }
+        List<Match> sorted = new ArrayList<>(recent);
+        for (Match match : indexed) {
+            int id = match.location().getId();
+            if (id == 0 || !recentIds.contains(id)) sorted.add(match);
+        }
+        sorted.sort(Comparator.comparingDouble(Match::distanceKm));
+        Set<Integer> ids = new HashSet<>();
+        List<Match> distinct = new ArrayList<>();
+        for (Match match : sorted) {
+            int id = match.location().getId();
+            // Locations without an id (e.g. typed coordinates) can't be told apart, keep them all
+            if (id != 0 && !ids.add(id)) continue;
+            distinct.add(match);
+            if (distinct.size() == count) break;
+        }
+        return distinct;
+    }
+
+    private double distanceSquared(double[] query, int point) {
+        double dx = query[0] - points[point * 3];
+        double dy = query[1] - points[point * 3 + 1];
+        double dz = query[2] - points[point * 3 + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static double chordSquared(double[] query, Location location) {
+        double[] point = toUnitVector(location.getLatitude(), location.getLongitude(), new double[3], 0);
+        double dx = query[0] - point[0];
+        double dy = query[1] - point[1];
+        double dz = query[2] - point[2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static double[] toUnitVector(double latitude, double longitude, double[] into, int offset) {
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+        into[offset] = Math.cos(lat) * Math.cos(lon);
+        into[offset + 1] = Math.cos(lat) * Math.sin(lon);
+        into[offset + 2] = Math.sin(lat);
+        return into;
+    }
+
+    // Squared chord length -> great-circle distance: the chord spans an angle of 2 * asin(chord / 2)
+    private static double toKm(double chordSquared) {
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(chordSquared) / 2));
+    }
+
+    private static double toChordSquared(double km) {
+        double chord = 2 * Math.sin(Math.min(Math.PI, km / EARTH_RADIUS_KM) / 2);
+        return chord * chord;
+    }
+
+    /**
+     * The closest points found so far, kept sorted. The counts asked for are small, so inserting is a short shift.
+     */
+    private static final class Neighbours {
+        private final int[] points;
+        private final double[] distances;
+        private int size;
+
+        private Neighbours(int capacity) {
+            this.points = new int[capacity];
+            this.distances = new double[capacity];
+        }
+
+        // Distance of the farthest kept point, anything farther can't get in
+        private double worst() {
+            return size < points.length ? Double.MAX_VALUE : distances[size - 1];
+        }
+
+        private void offer(int point, double distance) {
+            if (points.length == 0 || distance >= worst()) return;
+            int i = size < points.length ? size++ : size - 1;
+            while (i > 0 && distances[i - 1] > distance) {
+                points[i] = points[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            points[i] = point;
+            distances[i] = distance;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package cli;
+
+import api.ForecastLookup;
+import api.HttpClientService;
+import api.HttpFetcher;
+import models.Forecast;
+import models.Location;
+import models.TimeAxis;
+import tools.jackson.databind.DeserializationFeature;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+import utils.MetricsRegistry;
+import utils.Settings;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless entry point: fetches the forecasts for a file of points and writes one result line per point.
+ *
+ * Usage: BatchForecast INPUT [-o OUTPUT] [--format csv|jsonl] [--concurrency N] [--batch-size N] [--days N]
+ *
+ * Every input line is either "latitude,longitude[,name]" or a Location as JSON (the geocoding API's format).
+ * Empty lines and lines starting with # are skipped. Results go to OUTPUT (or stdout) as CSV or JSON Lines,
+ * in the order they complete; the "line" field points back to the input. Log output goes to stderr.
+ *
+ * The input is read as a stream and cut into batches (one API request each, see ForecastLookup.getForecasts).
+ * Each batch runs on its own virtual thread, and a semaphore caps how many are in flight, so memory stays
+ * the same for ten points or a hundred thousand.
+ */
+public class BatchForecast {
+    private static final int DEFAULT_CONCURRENCY = 8;
+    private static final int DEFAULT_BATCH_SIZE = 50;
+
+    private record Point(long line, Location location) {}
+
+    private final ForecastLookup forecastLookup;
+    private final HttpFetcher fetcher;
+    private final ResultWriter writer;
+    private final int concurrency;
+    private final int batchSize;
+    private final int days;
+    private final ObjectMapper mapper = JsonMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private long skipped;
+
+    /**
+     * @param fetcher The fetcher behind forecastLookup, only read to report how many HTTP requests were sent.
+     */
+    public BatchForecast(ForecastLookup forecastLookup, HttpFetcher fetcher, ResultWriter writer,
+                         int concurrency, int batchSize, int days) {
+        this.forecastLookup = forecastLookup;
+        this.fetcher = fetcher;
+        this.writer = writer;
+        this.concurrency = concurrency;
+        this.batchSize = batchSize;
+        this.days = days;
+    }
+
+    public static void main(String[] args) {
+        // Results may go to stdout, so everything the app logs (requests, cache messages...) goes to stderr
+        PrintStream results = System.out;
+        System.setOut(System.err);
+
+        String input = null;
+        String output = null;
+        String format = null;
+        int concurrency = DEFAULT_CONCURRENCY;
+        int batchSize = DEFAULT_BATCH_SIZE;
+        Integer days = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-o", "--output" -> output = args[++i];
+                    case "--format" -> format = args[++i];
+                    case "--concurrency" -> concurrency = Math.max(1, Integer.parseInt(args[++i]));
+                    case "--batch-size" -> batchSize = Math.max(1, Integer.parseInt(args[++i]));
+                    case "--days" -> days = Integer.parseInt(args[++i]);
+                    default -> {
+                        // A mistyped option would otherwise be taken for the input file
+                        if (args[i].startsWith("-") || input != null) throw new IllegalArgumentException(args[i]);
+                        input = args[i];
+                    }
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            input = null;
+        }
+        if (input == null) {
+            System.err.println("Usage: BatchForecast INPUT [-o OUTPUT] [--format csv|jsonl] [--concurrency N] [--batch-size N] [--days N]");
+            System.exit(2);
+        }
+        if (format == null) {
+            format = output != null && (output.endsWith(".jsonl") || output.endsWith(".json")) ? "jsonl" : "csv";
+        }
+
+        Settings settings = new Settings();
+        if (days == null) {
+            days = settings.getIntProperty("forecast_days", 7);
+        }
+        HttpClientService httpClientService = new HttpClientService(settings);
+        httpClientService.prewarm();
+
+        try (Writer out = output == null
+                ? new BufferedWriter(new OutputStreamWriter(results, StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(Path.of(output), StandardCharsets.UTF_8)) {
+            ResultWriter writer = format.equals("jsonl") ? new JsonLinesWriter(out) : new CsvWriter(out);
+            BatchForecast batch = new BatchForecast(new ForecastLookup(settings, httpClientService),
+                    httpClientService.getFetcher(), writer, concurrency, batchSize, Math.max(1, Math.min(days, ForecastLookup.MAX_FORECAST_DAYS)));
+            batch.run(Path.of(input));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            httpClientService.shutdown();
+        }
+    }
+
+    /**
+     * Fetches the forecasts for all points in the file and writes the results. Returns when everything is written.
+     */
+    public void run(Path input) throws IOException {
+        long start = System.nanoTime();
+        long requestsBefore = fetcher.getRequests();
+        Semaphore inFlight = new Semaphore(concurrency);
+        writer.writeHeader();
+
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Point> points = new ArrayList<>(batchSize);
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                Point point = parsePoint(line, lineNumber);
+                if (point == null) continue;
+                points.add(point);
+                if (points.size() == batchSize) {
+                    submit(executor, inFlight, points);
+                    points = new ArrayList<>(batchSize);
+                }
+            }
+            if (!points.isEmpty()) {
+                submit(executor, inFlight, points);
+            }
+            // Closing the executor waits for the remaining batches
+        }
+        writer.flush();
+        report(System.nanoTime() - start, fetcher.getRequests() - requestsBefore);
+    }
+
+    // Blocks the reading thread while all permits are taken, that's what keeps memory bounded
+    private void submit(ExecutorService executor, Semaphore inFlight, List<Point> points) {
+        inFlight.acquireUninterruptibly();
+        executor.submit(() -> {
+            try {
+                fetch(points);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private void fetch(List<Point> points) {
+        List<Location> locations = new ArrayList<>(points.size());
+        for (Point point : points) {
+            locations.add(point.location());
+        }
+        batches.incrementAndGet();
+        List<Forecast> forecasts;
+        try {
+            forecasts = forecastLookup.getForecasts(locations).join();
+        } catch (RuntimeException e) {
+            System.err.println("Batch starting at line " + points.get(0).line() + " failed: " + e.getMessage());
+            forecasts = null;
+        }
+
+        for (int i = 0; i < points.size(); i++) {
+            Forecast forecast = forecasts == null ? null : forecasts.get(i);
+            Forecast shown = forecast == null ? null : forecast.withDays(days);
+            try {
+                writer.write(points.get(i).line(), points.get(i).location(), shown);
+            } catch (IOException e) {
+                // The output is gone (disk full, closed pipe...), nothing left to do for this point
+                System.err.println("Could not write the result for line " + points.get(i).line() + ": " + e.getMessage());
+            }
+            if (forecast != null) succeeded.incrementAndGet(); else failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Parses one input line. Returns null for blank lines, comments and lines that can't be read (those are counted).
+     */
+    private Point parsePoint(String line, long lineNumber) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) return null;
+        try {
+            Location location;
+            if (trimmed.startsWith("{")) {
+                location = mapper.readValue(trimmed, Location.class);
+            } else {
+                String[] parts = trimmed.split(",", 3);
+                location = new Location();
+                location.setLatitude(Double.parseDouble(parts[0].trim()));
+                location.setLongitude(Double.parseDouble(parts[1].trim()));
+                if (parts.length > 2) location.setName(parts[2].trim());
+            }
+            if (Math.abs(location.getLatitude()) > 90 || Math.abs(location.getLongitude()) > 180) {
+                throw new IllegalArgumentException("coordinates out of range");
+            }
+            return new Point(lineNumber, location);
+        } catch (RuntimeException e) {
+            // Covers bad numbers, missing columns, invalid JSON and coordinates out of range
+            System.err.println("Skipping line " + lineNumber + ": " + e.getMessage());
+            skipped++;
+            return null;
+        }
+    }
+
+    // requests counts every HTTP exchange, so retries and hedges show up as more requests than batches
+    private void report(long elapsedNanos, long requests) {
+        double seconds = elapsedNanos / 1e9;
+        long points = succeeded.get() + failed.get();
+        System.err.printf(Locale.ROOT, "%n%d points (%d ok, %d failed, %d skipped lines) in %.2f s: %.1f points/s, %d batches, %d requests%n",
+                points, succeeded.get(), failed.get(), skipped, seconds, points / seconds, batches.get(), requests);
+        System.err.print(MetricsRegistry.get().dump());
+    }
+
+    // The columns are stored as floats, rounding keeps "17.1" from being written as 17.100000381469727
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    /**
+     * Writes one result per point. Called from many threads at once, implementations synchronize.
+     */
+    public interface ResultWriter {
+        void writeHeader() throws IOException;
+
+        // The forecast is null if it couldn't be fetched
+        void write(long line, Location location, Forecast forecast) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    /**
+     * One row per point with the current conditions and today's range, in canonical units.
+     */
+    public static class CsvWriter implements ResultWriter {
+        private final Writer out;
+
+        public CsvWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public synchronized void writeHeader() throws IOException {
+            out.write("line,name,latitude,longitude,status,timezone,temperature_c,wind_speed_kmh,weather_code,today_high_c,today_low_c\n");
+        }
+
+        @Override
+        public synchronized void write(long line, Location location, Forecast forecast) throws IOException {
+            StringBuilder row = new StringBuilder(128);
+            row.append(line).append(',')
+                    .append(csv(location.getName())).append(',')
+                    .append(location.getLatitude()).append(',')
+                    .append(location.getLongitude()).append(',');
+            if (forecast == null) {
+                row.append("error,,,,,,\n");
+            } else {
+                row.append("ok,")
+                        .append(csv(forecast.getTimezone())).append(',')
+                        .append(number(forecast.getCurrentTemperature())).append(',')
+                        .append(number(forecast.getCurrentWindSpeed())).append(',')
+                        .append(forecast.getCurrentWeatherCode()).append(',')
+                        .append(number(forecast.getDailyHigh())).append(',')
+                        .append(number(forecast.getDailyLow())).append('\n');
+            }
+            out.write(row.toString());
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            out.flush();
+        }
+
+        private static String csv(String value) {
+            if (value == null) return "";
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+
+        private static String number(double value) {
+            return Double.isNaN(value) ? "" : String.valueOf(round(value));
+        }
+    }
+
+    /**
+     * One JSON object per line: the same summary as the CSV, plus the daily forecast for the requested days.
+     */
+    public static class JsonLinesWriter implements ResultWriter {
+        private final Writer out;
+        private final ObjectMapper mapper = JsonMapper.builder().build();
+
+        public JsonLinesWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void writeHeader() {
+            // JSON Lines has no header
+        }
+
+        @Override
+        public void write(long line, Location location, Forecast forecast) throws IOException {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("line", line);
+            result.put("name", location.getName());
+            result.put("latitude", location.getLatitude());
+            result.put("longitude", location.getLongitude());
+            result.put("status", forecast == null ? "error" : "ok");
+            if (forecast != null) {
+                result.put("timezone", forecast.getTimezone());
+                result.put("temperature_c", number(forecast.getCurrentTemperature()));
+                result.put("wind_speed_kmh", number(forecast.getCurrentWindSpeed()));
+                result.put("weather_code", forecast.getCurrentWeatherCode());
+
+                List<Map<String, Object>> daily = new ArrayList<>();
+                Forecast.Daily days = forecast.getDaily();
+                if (days != null) {
+                    TimeAxis times = days.getTimeAxis();
+                    for (int i = 0; i < days.size(); i++) {
+                        Map<String, Object> day = new LinkedHashMap<>();
+                        day.put("date", times.localDateAt(i).toString());
+                        day.put("weather_code", days.getWeatherCode(i));
+                        day.put("high_c", number(days.getTemperature2mMax(i)));
+                        day.put("low_c", number(days.getTemperature2mMin(i)));
+                        daily.add(day);
+                    }
+                }
+                result.put("daily", daily);
+            }
+            // Serialized outside the lock, only the write itself has to be exclusive
+            String json = mapper.writeValueAsString(result);
+            synchronized (this) {
+                out.write(json);
+                out.write('\n');
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            out.flush();
+        }
+
+        private static Double number(double value) {
+            return Double.isNaN(value) ? null : round(value);
+        }
+    }
+}
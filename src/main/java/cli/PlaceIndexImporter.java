@@ -0,0 +1,160 @@
+package cli;
+
+import api.PlaceIndex;
+import models.Location;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Compiles a GeoNames cities dump (cities500.txt, cities15000.zip, ... from download.geonames.org/export/dump)
+ * into the offline place index the app searches before asking the geocoding API (see api.PlaceIndex).
+ *
+ * Usage: PlaceIndexImporter CITIES [-o places.idx] [--admin1 admin1CodesASCII.txt] [--alternate-names] [--min-population N]
+ *
+ * CITIES is the tab-separated dump, or the zip it is distributed in. Without --admin1 the places have no region
+ * name (the dump only has region codes). --alternate-names also indexes every alternate name (other languages,
+ * abbreviations), which finds more but makes the index several times larger.
+ */
+public class PlaceIndexImporter {
+    // Columns of the GeoNames "geoname" table
+    private static final int ID = 0;
+    private static final int NAME = 1;
+    private static final int ASCII_NAME = 2;
+    private static final int ALTERNATE_NAMES = 3;
+    private static final int LATITUDE = 4;
+    private static final int LONGITUDE = 5;
+    private static final int COUNTRY_CODE = 8;
+    private static final int ADMIN1_CODE = 10;
+    private static final int POPULATION = 14;
+    private static final int ELEVATION = 15;
+    private static final int DEM = 16;
+
+    public static void main(String[] args) {
+        String input = null;
+        String output = "places.idx";
+        String admin1File = null;
+        boolean alternateNames = false;
+        long minPopulation = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-o", "--output" -> output = args[++i];
+                    case "--admin1" -> admin1File = args[++i];
+                    case "--alternate-names" -> alternateNames = true;
+                    case "--min-population" -> minPopulation = Long.parseLong(args[++i]);
+                    default -> input = args[i];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            input = null;
+        }
+        if (input == null) {
+            System.err.println("Usage: PlaceIndexImporter CITIES [-o places.idx] [--admin1 admin1CodesASCII.txt] [--alternate-names] [--min-population N]");
+            System.exit(2);
+        }
+
+        try {
+            long start = System.nanoTime();
+            Map<String, String> admin1Names = admin1File == null ? Map.of() : readAdmin1Names(Path.of(admin1File));
+            List<PlaceIndex.Place> places = readPlaces(Path.of(input), admin1Names, alternateNames, minPopulation);
+            PlaceIndex.write(Path.of(output), places);
+            System.out.printf("Wrote %d places to %s (%d KB) in %.1f s%n", places.size(), output,
+                    Files.size(Path.of(output)) / 1024, (System.nanoTime() - start) / 1e9);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the places of a dump, skipping malformed lines and places below the minimum population.
+     */
+    public static List<PlaceIndex.Place> readPlaces(Path file, Map<String, String> admin1Names,
+                                                    boolean alternateNames, long minPopulation) throws IOException {
+        List<PlaceIndex.Place> places = new ArrayList<>();
+        long skipped = 0;
+        try (BufferedReader reader = open(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] columns = line.split("\t", -1);
+                try {
+                    long population = columns[POPULATION].isEmpty() ? 0 : Long.parseLong(columns[POPULATION]);
+                    if (population < minPopulation) continue;
+
+                    Location location = new Location();
+                    location.setId(Integer.parseInt(columns[ID]));
+                    location.setName(columns[NAME]);
+                    location.setLatitude(Double.parseDouble(columns[LATITUDE]));
+                    location.setLongitude(Double.parseDouble(columns[LONGITUDE]));
+                    location.setCountryCode(columns[COUNTRY_CODE]);
+                    location.setAdmin1(admin1Names.get(columns[COUNTRY_CODE] + "." + columns[ADMIN1_CODE]));
+                    location.setPopulation(population);
+                    // The elevation is often missing, the digital elevation model always has a value
+                    String elevation = !columns[ELEVATION].isEmpty() ? columns[ELEVATION] : columns[DEM];
+                    location.setElevation(elevation.isEmpty() ? 0 : Double.parseDouble(elevation));
+
+                    List<String> names = new ArrayList<>();
+                    names.add(columns[NAME]);
+                    names.add(columns[ASCII_NAME]);
+                    if (alternateNames && !columns[ALTERNATE_NAMES].isEmpty()) {
+                        names.addAll(List.of(columns[ALTERNATE_NAMES].split(",")));
+                    }
+                    places.add(new PlaceIndex.Place(location, names));
+                } catch (RuntimeException e) {
+                    // Too few columns or a bad number
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            System.out.println("Skipped " + skipped + " malformed lines in " + file);
+        }
+        return places;
+    }
+
+    // admin1CodesASCII.txt: "HR.21<TAB>City of Zagreb<TAB>City of Zagreb<TAB>3337532"
+    private static Map<String, String> readAdmin1Names(Path file) throws IOException {
+        Map<String, String> names = new HashMap<>();
+        try (BufferedReader reader = open(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split("\t");
+                if (columns.length >= 2) {
+                    names.put(columns[0], columns[1]);
+                }
+            }
+        }
+        return names;
+    }
+
+    // GeoNames ships every dump as a zip with a single .txt inside, both are accepted
+    private static BufferedReader open(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (file.getFileName().toString().endsWith(".zip")) {
+            ZipInputStream zip = new ZipInputStream(in);
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null && !entry.getName().endsWith(".txt")) {
+                // skip readme files and directories
+            }
+            if (entry == null) {
+                zip.close();
+                throw new IOException("No .txt file in " + file);
+            }
+            in = zip;
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+}
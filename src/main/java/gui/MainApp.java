@@ -1,13 +1,22 @@
 package gui;
 
 import api.ForecastLookup;
+import api.ForecastPrefetcher;
+import api.Geocoder;
+import api.HttpClientService;
+import api.PlaceIndex;
+import api.ReverseGeocoder;
 import gui.components.*;
 import javafx.animation.TranslateTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
@@ -17,8 +26,16 @@ import javafx.geometry.Rectangle2D;
 import javafx.util.Duration;
 import models.Forecast;
 import models.Location;
+import utils.ForecastSnapshotStore;
+import utils.MetricsRegistry;
 import utils.Settings;
 import utils.RecentSearches;
+import utils.UnitConverter;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The main entry point for the JavaFX weather application.
@@ -28,11 +45,17 @@ import utils.RecentSearches;
  */
 
 public class MainApp extends Application {
+    private static final String FORECAST_SNAPSHOT_FILE = "forecast_snapshots.dat";
+    private static final long FORECAST_SNAPSHOT_MAX_BYTES = 1024 * 1024;
+    private static final DateTimeFormatter METRICS_FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
 
     // Single instances of the core services, shared across the app.
     private Settings settings;
+    private HttpClientService httpClientService;
     private ForecastLookup forecastLookup;
     private RecentSearches recentSearches;
+    private ForecastPrefetcher prefetcher;
+    private ForecastSnapshotStore snapshotStore;
 
     // Fields for managing the slide-out "Recent Searches" drawer state and animation.
     private TranslateTransition drawerSlide;
@@ -40,6 +63,10 @@ public class MainApp extends Application {
 
     // The main StackPane
     private StackPane root;
+    private ForecastView forecastView;
+
+    // The forecast request that is currently in flight. Only the latest one is allowed to update the view.
+    private CompletableFuture<Forecast> pendingForecast;
 
     private boolean isDrawerOpen = false;
 
@@ -50,8 +77,29 @@ public class MainApp extends Application {
     @Override
     public void start(Stage primaryStage) {
         settings = new Settings();
+        // Timings and cache ratios can be watched in jconsole, or written to a file with Ctrl+Shift+M
+        MetricsRegistry.get().registerMBean();
+        // Connect to the APIs right away, the handshakes finish while the UI is being built
+        httpClientService = new HttpClientService(settings);
+        httpClientService.prewarm();
         recentSearches = new RecentSearches();
-        forecastLookup = new ForecastLookup(settings);
+        forecastLookup = new ForecastLookup(settings, httpClientService);
+        snapshotStore = new ForecastSnapshotStore(FORECAST_SNAPSHOT_FILE,
+                settings.getIntProperty("forecast_snapshot_size", 10), FORECAST_SNAPSHOT_MAX_BYTES);
+        forecastLookup.setSnapshotStore(snapshotStore);
+        // A stale cached forecast is shown right away and refreshed in the background,
+        // swap in the fresh copy if the user is still looking at that location.
+        forecastLookup.setOnBackgroundRefresh((location, forecast) -> Platform.runLater(() -> {
+            Location selected = forecastView.getSelectedLocation();
+            if (pendingForecast == null && selected != null
+                    && selected.getLatitude() == location.getLatitude()
+                    && selected.getLongitude() == location.getLongitude()) {
+                forecastView.setForecast(forecast);
+                updateBackground(forecast);
+            }
+        }));
+        // Keeps the recent locations' forecasts fresh in the background, so re-opening one is instant
+        prefetcher = new ForecastPrefetcher(forecastLookup, recentSearches::getRecentLocations);
 
         Screen screen = Screen.getPrimary();
         Rectangle2D bounds = screen.getVisualBounds();
@@ -60,20 +108,30 @@ public class MainApp extends Application {
 
         // These are the core components in the layout, the search bar at the top,
         // and the forecast view "box" that will display the weather data
-        SearchView searchView = new SearchView();
+        Geocoder geocoder = new Geocoder(httpClientService);
+        // Searches are answered locally if a place index was built (see cli.PlaceIndexImporter), the API covers the rest
+        PlaceIndex placeIndex = PlaceIndex.open(Path.of(settings.getProperties().getProperty("places_index_file", "places.idx")));
+        geocoder.setPlaceIndex(placeIndex);
+        // Typed coordinates are named from the same places plus the recent searches. Building the tree over a
+        // large index takes a moment, so it happens in the background and coordinate search starts working after.
+        Thread.ofVirtual().name("reverse-geocoder").start(() ->
+                geocoder.setReverseGeocoder(new ReverseGeocoder(placeIndex, recentSearches::getRecentLocations)));
+        SearchView searchView = new SearchView(geocoder);
         searchView.setMaxSize(VBox.USE_PREF_SIZE, VBox.USE_PREF_SIZE);
 
-        ForecastView forecastView = new ForecastView();
+        forecastView = new ForecastView();
+        forecastView.setUnits(UnitConverter.fromSettings(settings));
+        forecastView.setDays(settings.getIntProperty("forecast_days", 7));
 
 
         // Load the last searched for location and pull its forecast (if it exists)
         // Also, set the location property in searchView to this value, as our ForecastView location is reacting to it
-        Location lastLocation = RecentSearches.getLatestLocation();
+        // The last stored forecast is painted straight from disk, and replaced once the network answers
+        Location lastLocation = recentSearches.getLatestLocation();
         if (lastLocation != null) {
             searchView.selectedLocationProperty().set(lastLocation);
-            Forecast forecast = forecastLookup.getForecast(lastLocation);
-            forecastView.setForecast(forecast);
-            updateBackground(forecast);
+            forecastView.setForecast(forecastLookup.restoreSnapshot(lastLocation));
+            loadForecast(lastLocation);
         }
 
         // Makes sure the selected location and forecast matches the one selected in the search results, reactively
@@ -117,6 +175,7 @@ public class MainApp extends Application {
                 iconBox,
                 resultsList);
         root.getStyleClass().add("bg-night");
+        updateBackground(forecastView.getForecast());
 
         StackPane.setAlignment(mainContent, Pos.TOP_CENTER);
         StackPane.setAlignment(searchView, Pos.TOP_CENTER);
@@ -145,10 +204,7 @@ public class MainApp extends Application {
                 recentSearchesView.populateView();
 
                 // Look up the forecast for the location
-                Forecast forecast = forecastLookup.getForecast(newValue);
-                forecastView.setForecast(forecast);
-                updateBackground(forecast);
-                System.out.println("Forecast: " + forecast);
+                loadForecast(newValue);
             }
         });
 
@@ -167,10 +223,10 @@ public class MainApp extends Application {
             SettingsWindow settingsWindow = new SettingsWindow(settings, primaryStage);
             settingsWindow.showAndWait();
 
-            if (searchView.getSelectedLocation() != null) {
-                Forecast forecast = forecastLookup.getForecast(searchView.getSelectedLocation());
-                forecastView.setForecast(forecast);
-            }
+            // Units and days are applied locally to the forecast that is already loaded,
+            // so changing the settings only re-renders it, nothing is fetched again.
+            forecastView.setUnits(UnitConverter.fromSettings(settings));
+            forecastView.setDays(settings.getIntProperty("forecast_days", 7));
         });
 
         setupDrawerAnimation();
@@ -181,6 +237,66 @@ public class MainApp extends Application {
         primaryStage.setTitle("Weather Forecast");
         primaryStage.setScene(scene);
         primaryStage.show();
+
+        scene.getAccelerators().put(new KeyCodeCombination(KeyCode.M, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN),
+                () -> MetricsRegistry.get().dumpToFile("metrics-" + LocalDateTime.now().format(METRICS_FILE_TIME) + ".txt"));
+
+        // Only prefetch while the window can actually be seen
+        primaryStage.iconifiedProperty().addListener((observable, wasIconified, isIconified) -> updatePrefetching(primaryStage));
+        primaryStage.showingProperty().addListener((observable, wasShowing, isShowing) -> updatePrefetching(primaryStage));
+        updatePrefetching(primaryStage);
+    }
+
+    @Override
+    public void stop() {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+        if (httpClientService != null) {
+            httpClientService.shutdown();
+        }
+        if (recentSearches != null) {
+            recentSearches.close();
+        }
+        if (snapshotStore != null) {
+            snapshotStore.flush();
+        }
+    }
+
+    private void updatePrefetching(Stage stage) {
+        if (stage.isShowing() && !stage.isIconified()) {
+            prefetcher.resume();
+        } else {
+            prefetcher.pause();
+        }
+    }
+
+    /**
+     * Requests the forecast for a location in the background and shows it once it arrives.
+     * Any request that is still in flight is cancelled first, and a response that arrives
+     * after a newer request was made is dropped, so an older forecast can never overwrite a newer one.
+     */
+    private void loadForecast(Location location) {
+        if (pendingForecast != null) {
+            pendingForecast.cancel(true);
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<Forecast> request = forecastLookup.getForecastAsync(location);
+        pendingForecast = request;
+
+        request.thenAccept(forecast -> Platform.runLater(() -> {
+            // A newer request has been made in the meantime, this result is stale.
+            if (request != pendingForecast) {
+                return;
+            }
+            pendingForecast = null;
+            forecastView.setForecast(forecast);
+            updateBackground(forecast);
+            // From the click to the new forecast being in the views (cache, network, parse and populate)
+            MetricsRegistry.get().timer("location_switch").recordSince(start);
+            System.out.println("Forecast: " + forecast);
+        }));
     }
 
     /**
@@ -4,17 +4,12 @@ import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
-import javafx.scene.control.ScrollPane;
-import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import models.Forecast;
-import utils.WeatherIconManager;
+import utils.MetricsRegistry;
+import utils.UnitConverter;
 
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.TextStyle;
-import java.util.List;
-import java.util.Locale;
 
 /**
  * A component that displays the daily forecast (e.g., 7-day) in a
@@ -26,11 +21,12 @@ public class DailyForecastView extends VBox {
 
     // The main forecast data, bound from the parent ForecastView.
     private final ObjectProperty<Forecast> forecast = new SimpleObjectProperty<>();
+    // The units to show the temperatures in, bound from the parent ForecastView.
+    private final ObjectProperty<UnitConverter> units = new SimpleObjectProperty<>(UnitConverter.CANONICAL);
 
-    // The HBox that holds all the individual day VBoxes.
-    private final HBox contentBox = new HBox(15);
+    // The strip that shows one recycled cell per visible day.
+    private final ForecastStrip strip = new ForecastStrip(ForecastItemCell::daily);
     private final Label titleLabel = new Label("7-Day Forecast");
-    private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("M/d");
 
     public DailyForecastView() {
         super(10);
@@ -39,91 +35,45 @@ public class DailyForecastView extends VBox {
         // Center the title and the scroll pane horizontally within this VBox.
         this.setAlignment(Pos.CENTER);
 
-        ScrollPane scrollPane = new ScrollPane(contentBox);
-        // We only want horizontal scrolling if needed, never vertical (for this weather app scenario, at least).
-        scrollPane.setVbarPolicy(ScrollPane.ScrollBarPolicy.NEVER);
-        scrollPane.getStyleClass().add("forecast-scroll-pane");
-        // This forces the contentBox to fill the full width of the scroll pane.
-        scrollPane.setFitToWidth(true);
+        // Center the days when they all fit, like a regular centered HBox would.
+        strip.setCentered(true);
 
-        contentBox.getStyleClass().add("forecast-content-box");
-        contentBox.setAlignment(Pos.CENTER);
+        // Listen for changes to the forecast property and re-bind the view.
+        forecast.addListener((obs, oldF, newF) -> {
+            long start = System.nanoTime();
+            populateView(newF);
+            MetricsRegistry.get().timer("view.daily.populate").recordSince(start);
+        });
+        // A unit change only re-binds the visible cells, the data stays the same.
+        units.addListener((obs, oldU, newU) -> strip.refresh());
 
-        // Listen for changes to the forecast property and rebuild the view.
-        forecast.addListener((obs, oldF, newF) -> populateView(newF));
-
-        this.getChildren().addAll(titleLabel, scrollPane);
+        this.getChildren().addAll(titleLabel, strip);
     }
 
-    // Clears and rebuilds the daily forecast items based on new forecast data.
+    // Re-binds the daily forecast items to new forecast data. The cells themselves are reused.
     private void populateView(Forecast f) {
-        contentBox.getChildren().clear();
-        if (f == null || f.getDaily() == null || f.getDaily().getTime().isEmpty()) {
+        if (f == null || f.getDaily() == null || f.getDaily().size() == 0) {
             titleLabel.setText("No Forecast Available");
+            strip.setItems(0, null);
             return;
         }
 
         Forecast.Daily dailyData = f.getDaily();
 
-        // Get all the lists of data from the model.
-        List<String> times = dailyData.getTime();
-        List<Double> highs = dailyData.getTemperature2mMax();
-        List<Double> lows = dailyData.getTemperature2mMin();
-        List<Integer> codes = dailyData.getWeatherCode();
-        String tempUnit = f.getCurrentTemperatureUnit();
-
         // Dynamically update the title based on how many days we received/set in the settings.
-        titleLabel.setText(times.size() + "-Day Forecast");
-
-        int numDays = times.size();
-        for (int i = 0; i < numDays; i++) {
-            // VBox for each day
-            VBox itemBox = new VBox(5);
-            itemBox.getStyleClass().add("forecast-item-box");
-            itemBox.setMinHeight(VBox.USE_PREF_SIZE);
-            itemBox.setAlignment(Pos.CENTER);
-
-            LocalDate date = LocalDate.parse(times.get(i), DateTimeFormatter.ISO_LOCAL_DATE);
-
-            // Format the data for display
-            String day = formatDay(date);
-            String dateString = date.format(dateFormatter);
-            String tempHigh = String.format("%.0f%s", highs.get(i), tempUnit);
-            String tempLow = String.format("%.0f%s", lows.get(i), tempUnit);
-            String iconChar = WeatherIconManager.getIconCharacter(codes.get(i));
-
-            // Create Labels
-            Label dayLabel = new Label(day);
-            dayLabel.getStyleClass().add("forecast-item-day");
-
-            Label dateLabel = new Label(dateString);
-            dateLabel.getStyleClass().add("forecast-item-date");
-
-            Label iconLabel = new Label(iconChar);
-            iconLabel.getStyleClass().add("forecast-item-icon-large");
+        titleLabel.setText(dailyData.size() + "-Day Forecast");
 
-            Label highLabel = new Label(tempHigh);
-            highLabel.getStyleClass().add("forecast-item-high");
+        // "Today" is the date at the location, not on this machine
+        LocalDate today = LocalDate.ofEpochDay(Math.floorDiv(f.getLocalEpochSecondNow(), 86_400));
 
-            Label lowLabel = new Label(tempLow);
-            lowLabel.getStyleClass().add("forecast-item-low"); // New CSS class
-
-            // Add them all
-            itemBox.getChildren().addAll(dayLabel, dateLabel, iconLabel, highLabel, lowLabel);
-            contentBox.getChildren().add(itemBox);
-        }
-    }
-
-    // Helper method to format the date.
-    // Converts a LocalDate into "Today" or the short day name (e.g., "Fri").
-    private String formatDay(LocalDate date) {
-        if (date.equals(LocalDate.now())) {
-            return "Today";
-        }
-        return date.getDayOfWeek().getDisplayName(TextStyle.SHORT, Locale.getDefault());
+        strip.setItems(dailyData.size(), (cell, i) -> ForecastItems.bindDay(cell, dailyData, i, today, units.get()));
     }
 
     public ObjectProperty<Forecast> forecastProperty() {
         return forecast;
     }
+
+    public ObjectProperty<UnitConverter> unitsProperty() {
+        return units;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package gui.components;
+
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.layout.VBox;
+
+/**
+ * A single item (one hour or one day) in a ForecastStrip.
+ * Cells are created once and then re-bound to new data by changing their label texts,
+ * so switching locations doesn't create new nodes or re-apply CSS classes.
+ */
+public class ForecastItemCell extends VBox implements ForecastItems.Target {
+    // All cells have the same width, which lets the strip work out which cells are visible without measuring them
+    public static final double WIDTH = 72;
+
+    private final Label titleLabel = new Label();
+    private final Label dateLabel;
+    private final Label iconLabel = new Label();
+    private final Label highLabel = new Label();
+    private final Label lowLabel;
+
+    private ForecastItemCell(boolean daily) {
+        super(5);
+        getStyleClass().add("forecast-item-box");
+        setMinHeight(VBox.USE_PREF_SIZE);
+        setAlignment(Pos.CENTER);
+        setMinWidth(WIDTH);
+        setPrefWidth(WIDTH);
+        setMaxWidth(WIDTH);
+
+        titleLabel.getStyleClass().add("forecast-item-day");
+        iconLabel.getStyleClass().add("forecast-item-icon-large");
+        highLabel.getStyleClass().add("forecast-item-high");
+
+        if (daily) {
+            dateLabel = new Label();
+            dateLabel.getStyleClass().add("forecast-item-date");
+            lowLabel = new Label();
+            lowLabel.getStyleClass().add("forecast-item-low");
+            getChildren().addAll(titleLabel, dateLabel, iconLabel, highLabel, lowLabel);
+        } else {
+            dateLabel = null;
+            lowLabel = null;
+            getChildren().addAll(titleLabel, iconLabel, highLabel);
+        }
+    }
+
+    // A cell with the hour, icon and temperature
+    public static ForecastItemCell hourly() {
+        return new ForecastItemCell(false);
+    }
+
+    // A cell with the day, date, icon, high and low temperature
+    public static ForecastItemCell daily() {
+        return new ForecastItemCell(true);
+    }
+
+    @Override
+    public void setTitle(String title) { titleLabel.setText(title); }
+    @Override
+    public void setIcon(String icon) { iconLabel.setText(icon); }
+    @Override
+    public void setHigh(String high) { highLabel.setText(high); }
+
+    @Override
+    public void setDate(String date) {
+        if (dateLabel != null) dateLabel.setText(date);
+    }
+
+    @Override
+    public void setLow(String low) {
+        if (lowLabel != null) lowLabel.setText(low);
+    }
+}
@@ -0,0 +1,63 @@
+package gui.components;
+
+import models.Forecast;
+import utils.UnitConverter;
+import utils.WeatherIconManager;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.TextStyle;
+import java.util.Locale;
+
+/**
+ * What the hourly and daily views show for one item, independent of the cell that shows it.
+ * Uses no JavaFX classes, so the benchmarks can run exactly this code without a running toolkit.
+ */
+public final class ForecastItems {
+    private static final DateTimeFormatter HOUR_FORMATTER = DateTimeFormatter.ofPattern("ha"); // "3PM"
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("M/d");
+
+    /**
+     * Receives the texts of one item. ForecastItemCell puts them into its labels.
+     */
+    public interface Target {
+        void setTitle(String title);
+        void setDate(String date);
+        void setIcon(String icon);
+        void setHigh(String high);
+        void setLow(String low);
+    }
+
+    private ForecastItems() {}
+
+    /**
+     * Fills in the hour at the given index of the hourly data.
+     * @param first Whether this is the first hour shown, which is labeled "Now".
+     */
+    public static void bindHour(Target target, Forecast.Hourly hourly, int hour, boolean first, UnitConverter units) {
+        target.setTitle(first ? "Now" : hourly.getTimeAxis().localDateTimeAt(hour).format(HOUR_FORMATTER).toLowerCase());
+        target.setIcon(WeatherIconManager.getIconCharacter(hourly.getWeatherCode(hour)));
+        target.setHigh(units.formatTemperature(hourly.getTemperature(hour)));
+    }
+
+    /**
+     * Fills in the day at the given index of the daily data.
+     * @param today The current date at the location, which is labeled "Today".
+     */
+    public static void bindDay(Target target, Forecast.Daily daily, int day, LocalDate today, UnitConverter units) {
+        LocalDate date = daily.getTimeAxis().localDateAt(day);
+        target.setTitle(formatDay(date, today));
+        target.setDate(date.format(DATE_FORMATTER));
+        target.setIcon(WeatherIconManager.getIconCharacter(daily.getWeatherCode(day)));
+        target.setHigh(units.formatTemperature(daily.getTemperature2mMax(day)));
+        target.setLow(units.formatTemperature(daily.getTemperature2mMin(day)));
+    }
+
+    // Converts a LocalDate into "Today" or the short day name (e.g., "Fri").
+    private static String formatDay(LocalDate date, LocalDate today) {
+        if (date.equals(today)) {
+            return "Today";
+        }
+        return date.getDayOfWeek().getDisplayName(TextStyle.SHORT, Locale.getDefault());
+    }
+}
@@ -0,0 +1,184 @@
+package gui.components;
+
+import javafx.geometry.Bounds;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.layout.Region;
+import utils.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * A horizontally scrolling strip of forecast items (hours or days) that only creates nodes
+ * for the items that are actually visible.
+ *
+ * The strip keeps a pool of ForecastItemCells. Whenever the data changes or the user scrolls,
+ * the cells are moved into place and re-bound to the items they now show, instead of clearing
+ * and rebuilding the whole list. A 16-day hourly forecast (384 items) therefore only needs
+ * as many cells as fit on screen, and once the pool is warm no new nodes are created.
+ */
+public class ForecastStrip extends ScrollPane {
+
+    /**
+     * Fills a cell with the data of the item at the given index.
+     */
+    public interface CellBinder {
+        void bind(ForecastItemCell cell, int index);
+    }
+
+    // Horizontal gap between two cells
+    private static final double SPACING = 15;
+    // Extra cells kept on either side of the viewport so fast scrolling doesn't show gaps
+    private static final int BUFFER = 2;
+
+    private final Supplier<ForecastItemCell> cellFactory;
+    private final Track track = new Track();
+
+    private int itemCount;
+    private CellBinder binder;
+    private boolean centered;
+
+    /**
+     * @param cellFactory Creates a new cell when the pool is too small for the viewport.
+     */
+    public ForecastStrip(Supplier<ForecastItemCell> cellFactory) {
+        this.cellFactory = cellFactory;
+        setContent(track);
+        // We only want horizontal scrolling if needed, never vertical (for this weather app scenario, at least).
+        setVbarPolicy(ScrollBarPolicy.NEVER);
+        getStyleClass().add("forecast-scroll-pane");
+        track.getStyleClass().add("forecast-content-box");
+
+        // Scrolling or resizing changes which items are visible
+        viewportBoundsProperty().addListener((obs, oldBounds, newBounds) -> track.requestLayout());
+        hvalueProperty().addListener((obs, oldValue, newValue) -> track.requestLayout());
+    }
+
+    /**
+     * Shows a new set of items. The existing cells are re-bound, nothing is rebuilt.
+     * @param count The number of items.
+     * @param binder Fills a cell with the data of an item.
+     */
+    public void setItems(int count, CellBinder binder) {
+        this.itemCount = count;
+        this.binder = binder;
+        track.dirty = true;
+        setHvalue(getHmin());
+        track.requestLayout();
+    }
+
+    /**
+     * Re-binds the visible cells with the current binder, e.g. after the display units changed.
+     * Unlike setItems, the scroll position is kept.
+     */
+    public void refresh() {
+        if (binder == null) return;
+        track.dirty = true;
+        track.requestLayout();
+    }
+
+    /**
+     * If true, the items are centered when they all fit into the viewport (like the daily view),
+     * otherwise they start at the left edge.
+     */
+    public void setCentered(boolean centered) {
+        this.centered = centered;
+        setFitToWidth(centered);
+        track.requestLayout();
+    }
+
+    // Distance from the start of one cell to the start of the next
+    private static double pitch() {
+        return ForecastItemCell.WIDTH + SPACING;
+    }
+
+    /**
+     * The scrollable content. It reports the size of all items, but only lays out the visible ones.
+     */
+    private class Track extends Region {
+        private final List<ForecastItemCell> pool = new ArrayList<>();
+        private int firstVisible = -1;
+        private int visibleCount = -1;
+        private boolean dirty;
+
+        private double contentWidth() {
+            return itemCount == 0 ? 0 : itemCount * pitch() - SPACING;
+        }
+
+        private double cellHeight() {
+            double height = 0;
+            for (var child : getChildren()) {
+                height = Math.max(height, child.prefHeight(ForecastItemCell.WIDTH));
+            }
+            return height;
+        }
+
+        @Override
+        protected double computePrefWidth(double height) {
+            return snappedLeftInset() + contentWidth() + snappedRightInset();
+        }
+
+        @Override
+        protected double computeMinWidth(double height) {
+            return computePrefWidth(height);
+        }
+
+        @Override
+        protected double computePrefHeight(double width) {
+            return snappedTopInset() + cellHeight() + snappedBottomInset();
+        }
+
+        @Override
+        protected void layoutChildren() {
+            double left = snappedLeftInset();
+            double available = getWidth() - left - snappedRightInset();
+            double offset = centered ? Math.max(0, (available - contentWidth()) / 2) : 0;
+
+            // The viewport's minX is the negative scroll offset in content coordinates
+            Bounds viewport = getViewportBounds();
+            double viewStart = -viewport.getMinX() - left - offset;
+            double viewEnd = viewStart + viewport.getWidth();
+
+            int first = Math.max(0, (int) Math.floor(viewStart / pitch()) - BUFFER);
+            int last = Math.min(itemCount, (int) Math.ceil(viewEnd / pitch()) + BUFFER);
+            int count = Math.max(0, last - first);
+
+            // Only touch the scene graph when the visible window actually changed
+            if (dirty || first != firstVisible || count != visibleCount) {
+                long start = System.nanoTime();
+                int pooled = pool.size();
+                while (pool.size() < count) {
+                    pool.add(cellFactory.get());
+                }
+                // The children are always the first cells of the pool, so only the tail has to change
+                int shown = getChildren().size();
+                if (shown < count) {
+                    getChildren().addAll(pool.subList(shown, count));
+                } else if (shown > count) {
+                    getChildren().remove(count, shown);
+                }
+                // A brand-new cell has no CSS yet, which would make its height wrong for one frame.
+                // Only those few are styled here, the rest is left to the normal CSS pass of the next pulse.
+                if (getScene() != null) {
+                    for (int i = pooled; i < count; i++) {
+                        pool.get(i).applyCss();
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    binder.bind(pool.get(i), first + i);
+                }
+                firstVisible = first;
+                visibleCount = count;
+                dirty = false;
+                MetricsRegistry.get().timer("view.strip.bind").recordSince(start);
+            }
+
+            double top = snappedTopInset();
+            double height = cellHeight();
+            for (int i = 0; i < count; i++) {
+                pool.get(i).resizeRelocate(left + offset + (first + i) * pitch(), top, ForecastItemCell.WIDTH, height);
+            }
+        }
+    }
+}
@@ -2,8 +2,12 @@ package gui.components;
 
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
+import api.ForecastLookup;
 import javafx.beans.binding.Bindings;
+import javafx.beans.binding.ObjectBinding;
+import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
@@ -14,6 +18,7 @@ import javafx.scene.layout.VBox;
 import javafx.util.Duration;
 import models.Forecast;
 import models.Location;
+import utils.UnitConverter;
 
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -29,6 +34,16 @@ public class ForecastView extends VBox {
     // The core "input" properties. MainApp sets these, and all internal bindings react.
     private final ObjectProperty<Location> selectedLocation = new SimpleObjectProperty<>();
     private final ObjectProperty<Forecast> forecast = new SimpleObjectProperty<>();
+    // The units everything is shown in. Forecasts are always in canonical units, so changing this
+    // only re-formats the labels and the visible cells, no data is fetched again.
+    private final ObjectProperty<UnitConverter> units = new SimpleObjectProperty<>(UnitConverter.CANONICAL);
+    // How many days to show. Forecasts always cover the full horizon, the child views get a slice of it,
+    // so changing this doesn't need a new request either.
+    private final IntegerProperty days = new SimpleIntegerProperty(ForecastLookup.MAX_FORECAST_DAYS);
+    private final ObjectBinding<Forecast> shownForecast = Bindings.createObjectBinding(() -> {
+        Forecast f = forecast.get();
+        return f == null ? null : f.withDays(days.get());
+    }, forecast, days);
 
     // Parts for the current summary box at the top of the forecast view
     private final Label locationNameLabel = new Label();
@@ -64,7 +79,7 @@ public class ForecastView extends VBox {
         });
 
         // All labels are bound to properties. They will update automatically
-        // when the selectedLocation or forecast properties change,
+        // when the selectedLocation, forecast or units properties change,
         // without needing manual setters.
         locationNameLabel.textProperty().bind(Bindings.createStringBinding(() -> {
             Location location = selectedLocation.get();
@@ -75,26 +90,26 @@ public class ForecastView extends VBox {
         currentTemperatureLabel.getStyleClass().add("label-current-temperature");
         currentTemperatureLabel.textProperty().bind(Bindings.createStringBinding(() -> {
             Forecast f = forecast.get();
-            return f == null ? "" : "Current: " + f.getFormattedTemperature();
-        }, forecast));
+            return f == null ? "" : "Current: " + units.get().formatTemperature(f.getCurrentTemperature());
+        }, forecast, units));
 
         dailyHighLabel.getStyleClass().add("label-daily-high");
         dailyHighLabel.textProperty().bind(Bindings.createStringBinding(() -> {
             Forecast f = forecast.get();
-            return f == null ? "" : "High: " + f.getFormattedDailyHigh();
-        }, forecast));
+            return f == null ? "" : "High: " + units.get().formatTemperature(f.getDailyHigh());
+        }, forecast, units));
 
         dailyLowLabel.getStyleClass().add("label-daily-low");
         dailyLowLabel.textProperty().bind(Bindings.createStringBinding(() -> {
             Forecast f = forecast.get();
-            return f == null ? "" : "Low: " + f.getFormattedDailyLow();
-        }, forecast));
+            return f == null ? "" : "Low: " + units.get().formatTemperature(f.getDailyLow());
+        }, forecast, units));
 
         windSpeedLabel.getStyleClass().add("label-wind-speed");
         windSpeedLabel.textProperty().bind(Bindings.createStringBinding(() -> {
             Forecast f = forecast.get();
-            return f == null ? "" : f.getFormattedWindSpeed();
-        }, forecast));
+            return f == null ? "" : units.get().formatWindSpeed(f.getCurrentWindSpeed());
+        }, forecast, units));
 
         Label windIcon = new Label("\uf021");
         windIcon.getStyleClass().add("wind-icon");
@@ -140,10 +155,12 @@ public class ForecastView extends VBox {
         toggleBox.setAlignment(Pos.CENTER);
 
         hourlyView = new HourlyForecastView();
-        hourlyView.forecastProperty().bind(forecast);
+        hourlyView.forecastProperty().bind(shownForecast);
+        hourlyView.unitsProperty().bind(units);
 
         dailyView = new DailyForecastView();
-        dailyView.forecastProperty().bind(forecast);
+        dailyView.forecastProperty().bind(shownForecast);
+        dailyView.unitsProperty().bind(units);
 
         // Bind the visibility of the child views to the toggle button's selected state.
         hourlyView.visibleProperty().bind(hourlyToggle.selectedProperty());
@@ -154,7 +171,8 @@ public class ForecastView extends VBox {
 
         // The "details" box that lives at the bottom
         detailsView = new WeatherDetailsView();
-        detailsView.forecastProperty().bind(this.forecast);
+        detailsView.forecastProperty().bind(shownForecast);
+        detailsView.unitsProperty().bind(units);
 
         // Add all major sections to this VBox
         this.getChildren().addAll(currentSummaryBox, toggleBox, hourlyView, dailyView, detailsView);
@@ -176,6 +194,14 @@ public class ForecastView extends VBox {
         this.forecast.set(forecast);
     }
 
+    public void setUnits(UnitConverter units) {
+        this.units.set(units);
+    }
+
+    public void setDays(int days) {
+        this.days.set(Math.max(1, Math.min(days, ForecastLookup.MAX_FORECAST_DAYS)));
+    }
+
     public Forecast getForecast() {
         return forecast.get();
     }
@@ -52,8 +52,8 @@ public class RecentSearchesView extends VBox {
         title.getStyleClass().add("forecast-title-label");
         getChildren().add(title);
 
-        // Loop through the entries from the .ser file
-        // The .ser file saves our recent searches
+        // Loop through the recent entries
+        // RecentSearches keeps them on disk
         // So we can use them again even if we close the app
         for (SearchEntry entry : recentSearches.getRecentEntries()){
             VBox itemBox = new VBox(2);
@@ -1,6 +1,8 @@
 package gui.components;
 
 import api.Geocoder;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.scene.control.Label;
@@ -8,37 +10,62 @@ import javafx.scene.input.KeyCode;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.util.Duration;
 import models.Location;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class SearchView extends VBox {
+    // How long typing has to pause before a search is sent, and how long the text has to be to search as you type
+    private static final Duration TYPING_DEBOUNCE = Duration.millis(300);
+    private static final int MIN_TYPE_AHEAD_LENGTH = 2;
+
     private SearchBar searchBar;
     private Geocoder geocoder;
     private VBox resultsList;
     private int highlightedIndex = -1;
 
+    // Fires once the user stops typing for a moment
+    private final PauseTransition typingPause = new PauseTransition(TYPING_DEBOUNCE);
+    // The search that is currently in flight. There is never more than one, a newer query cancels it.
+    private CompletableFuture<List<Location>> pendingSearch;
+
     private ObjectProperty<Location> selectedLocation = new SimpleObjectProperty<>();
 
 
-    public SearchView() {
+    public SearchView(Geocoder geocoder) {
         super(5);
         this.getStyleClass().add("search-view");
         this.searchBar = new SearchBar();
         this.resultsList = new VBox(5);
-        this.geocoder = new Geocoder();
+        this.geocoder = geocoder;
 
         configureResultsList();
 
         this.getChildren().add(searchBar);
 
+        // Pressing the search button (or ENTER) searches right away, without waiting for the debounce
         this.searchBar.setOnSearch(event -> {
+            typingPause.stop();
             String query = searchBar.getSearchText();
             if (query != null && !query.trim().isEmpty()) {
                 handleSearch(query);
             }
         });
 
+        // Search as you type, once the user pauses
+        typingPause.setOnFinished(event -> {
+            String query = searchBar.getSearchText();
+            if (query != null && query.trim().length() >= MIN_TYPE_AHEAD_LENGTH) {
+                handleSearch(query);
+            } else {
+                cancelPendingSearch();
+                resultsList.setVisible(false);
+                resultsList.setManaged(false);
+            }
+        });
+
         // Enables cycling through the search results using arrow keys
         // Pressing ENTER initiates forecast search
         this.searchBar.getTextField().setOnKeyPressed(event -> {
@@ -54,9 +81,10 @@ public class SearchView extends VBox {
             }
         });
 
-        // Reset the highlighted result whenever the user types again
+        // Reset the highlighted result whenever the user types again, and restart the debounce timer
         this.searchBar.getTextField().textProperty().addListener((obs, oldText, newText) -> {
             highlightedIndex = -1;
+            typingPause.playFromStart();
         });
 
         // Reset the highlighted result when user clicks back into the text field
@@ -104,9 +132,31 @@ public class SearchView extends VBox {
     private void handleSearch(String query){
         System.out.println("Searching for: " + query);
 
+        // A newer query makes the previous one pointless, abort it so only one request is ever outstanding
+        cancelPendingSearch();
+
         // Query the Geocoding API and retrieve location objects (which contain coordinates we use to query the Weather API)
-        List<Location> locations = geocoder.searchLocationsByName(query);
+        // This happens in the background, the results are rendered back on the FX thread
+        CompletableFuture<List<Location>> search = geocoder.searchLocationsByNameAsync(query);
+        pendingSearch = search;
+        search.thenAccept(locations -> Platform.runLater(() -> {
+            // Results for a query that has been superseded in the meantime are dropped
+            if (search != pendingSearch) {
+                return;
+            }
+            pendingSearch = null;
+            showResults(query, locations);
+        }));
+    }
+
+    private void cancelPendingSearch() {
+        if (pendingSearch != null) {
+            pendingSearch.cancel(true);
+            pendingSearch = null;
+        }
+    }
 
+    private void showResults(String query, List<Location> locations){
         // Clear any residual search results from other searches
         resultsList.getChildren().clear();
 
@@ -158,6 +208,9 @@ public class SearchView extends VBox {
 
     private void handleSelection(Location selected) {
         if (selected != null) {
+            // A search still waiting for the debounce (or for the API) would bring the results list back up
+            typingPause.stop();
+            cancelPendingSearch();
             selectedLocation.set(selected);
             resultsList.setVisible(false);
             resultsList.setManaged(false);
@@ -1,5 +1,6 @@
 package gui.components;
 
+import api.ForecastLookup;
 import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -76,7 +77,7 @@ public class SettingsWindow extends Stage {
         Label daysLabel = new Label("Forecast Days:");
         daysLabel.getStyleClass().add("settings-label");
         grid.add(daysLabel, 0, 3);
-        daysSpinner = new Spinner<>(1, 16, Integer.parseInt(props.getProperty("forecast_days")));
+        daysSpinner = new Spinner<>(1, ForecastLookup.MAX_FORECAST_DAYS, Integer.parseInt(props.getProperty("forecast_days")));
         grid.add(daysSpinner, 1, 3);
 
         // Save Button
@@ -7,12 +7,16 @@ import javafx.scene.control.Label;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
 import models.Forecast;
+import utils.MetricsRegistry;
+import utils.UnitConverter;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 
 public class WeatherDetailsView extends VBox {
     private final ObjectProperty<Forecast> forecast = new SimpleObjectProperty<>();
+    private final ObjectProperty<UnitConverter> units = new SimpleObjectProperty<>(UnitConverter.CANONICAL);
     private final GridPane grid = new GridPane();
     private final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("h:mm a");
 
@@ -66,7 +70,12 @@ public class WeatherDetailsView extends VBox {
         grid.add(showersValue, 3, 3);
 
         // Listen for changes in the forecast
-        forecast.addListener((obs, oldF, newF) -> populateView(newF));
+        forecast.addListener((obs, oldF, newF) -> {
+            long start = System.nanoTime();
+            populateView(newF);
+            MetricsRegistry.get().timer("view.details.populate").recordSince(start);
+        });
+        units.addListener((obs, oldU, newU) -> populateView(forecast.get()));
 
         this.getChildren().add(grid);
     }
@@ -85,14 +94,14 @@ public class WeatherDetailsView extends VBox {
             return;
         }
 
-        String tempUnit = f.getCurrentTemperatureUnit();
+        UnitConverter converter = units.get();
 
         // Get current details of the location, other than just temperatures
         if (f.getCurrentDetails() != null) {
-            feelsLikeValue.setText(String.format("%.0f%s", f.getCurrentDetails().getApparentTemperature(), tempUnit));
+            feelsLikeValue.setText(converter.formatTemperature(f.getCurrentDetails().getApparentTemperature()));
             humidityValue.setText(f.getCurrentDetails().getRelativeHumidity2m() + "%");
-            rainValue.setText(String.format("%.1f%s", f.getCurrentDetails().getRain(), f.getCurrentRainUnit()));
-            showersValue.setText(String.format("%.1f%s", f.getCurrentDetails().getShowers(), f.getCurrentShowersUnit()));
+            rainValue.setText(converter.formatPrecipitation(f.getCurrentDetails().getRain()));
+            showersValue.setText(converter.formatPrecipitation(f.getCurrentDetails().getShowers()));
         } else {
             feelsLikeValue.setText("-");
             humidityValue.setText("-");
@@ -102,33 +111,37 @@ public class WeatherDetailsView extends VBox {
 
         // Get details for the current hour
         if (f.getHourly() != null) {
-            int currentHour = LocalDateTime.now().getHour();
-            if (f.getHourly().getPrecipitationProbability() != null && f.getHourly().getPrecipitationProbability().size() > currentHour) {
-                precipValue.setText(f.getHourly().getPrecipitationProbability().get(currentHour) + "%");
+            // The current hour at the location, which isn't necessarily the current hour here
+            int currentHour = f.getCurrentHourIndex();
+            int precipitation = f.getHourly().getPrecipitationProbability(currentHour);
+            if (precipitation != Forecast.MISSING) {
+                precipValue.setText(precipitation + "%");
             } else precipValue.setText("-");
-            if (f.getHourly().getUvIndex() != null && f.getHourly().getUvIndex().size() > currentHour) {
-                uvIndexValue.setText(String.format("%.1f", f.getHourly().getUvIndex().get(currentHour)));
+            double uvIndex = f.getHourly().getUvIndex(currentHour);
+            if (!Double.isNaN(uvIndex)) {
+                uvIndexValue.setText(String.format("%.1f", uvIndex));
             } else uvIndexValue.setText("-");
         }
 
         // Get details for the day
         if (f.getDaily() != null) {
-            // Parse time with timezone, then format
-            try {
-                LocalDateTime sunrise = LocalDateTime.parse(f.getDaily().getSunrise().getFirst());
-                LocalDateTime sunset = LocalDateTime.parse(f.getDaily().getSunset().getFirst());
-
-                sunriseValue.setText(sunrise.format(timeFormatter));
-                sunsetValue.setText(sunset.format(timeFormatter));
-            } catch (Exception e) {
-                System.err.println("Could not parse sunrise/sunset: " + e.getMessage());
-                sunriseValue.setText("-");
-                sunsetValue.setText("-");
-            }
+            // Sunrise and sunset are already parsed into the location's local time
+            int today = f.getCurrentDayIndex();
+            sunriseValue.setText(formatLocalTime(f.getDaily().getSunrise(today)));
+            sunsetValue.setText(formatLocalTime(f.getDaily().getSunset(today)));
         }
     }
 
+    private String formatLocalTime(long localEpochSecond) {
+        if (localEpochSecond == Forecast.MISSING_TIME) return "-";
+        return LocalDateTime.ofEpochSecond(localEpochSecond, 0, ZoneOffset.UTC).format(timeFormatter);
+    }
+
     public ObjectProperty<Forecast> forecastProperty() {
         return forecast;
     }
+
+    public ObjectProperty<UnitConverter> unitsProperty() {
+        return units;
+    }
 }
@@ -0,0 +1,139 @@
+package models;
+
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.DeserializationContext;
+import tools.jackson.databind.ValueDeserializer;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * A container class for the Jackson deserializers that read the forecast's JSON arrays
+ * straight into primitive columns. Values are read token by token, so nothing gets boxed
+ * and no intermediate List is built.
+ *
+ * The API uses null for values it doesn't have (e.g. far into the forecast horizon).
+ * Those become Float.NaN in float columns, Forecast.MISSING in int columns and Forecast.MISSING_TIME in time columns.
+ */
+public class ColumnDeserializers {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    public static class FloatColumn extends ValueDeserializer<float[]> {
+        @Override
+        public float[] deserialize(JsonParser p, DeserializationContext ctxt) {
+            expectArray(p, ctxt, float[].class);
+            float[] values = new float[INITIAL_CAPACITY];
+            int count = 0;
+            JsonToken token;
+            while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+                if (count == values.length) values = Arrays.copyOf(values, count * 2);
+                values[count++] = token == JsonToken.VALUE_NULL ? Float.NaN : p.getFloatValue();
+            }
+            return Arrays.copyOf(values, count);
+        }
+    }
+
+    public static class IntColumn extends ValueDeserializer<int[]> {
+        @Override
+        public int[] deserialize(JsonParser p, DeserializationContext ctxt) {
+            expectArray(p, ctxt, int[].class);
+            int[] values = new int[INITIAL_CAPACITY];
+            int count = 0;
+            JsonToken token;
+            while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+                if (count == values.length) values = Arrays.copyOf(values, count * 2);
+                values[count++] = token == JsonToken.VALUE_NULL ? Forecast.MISSING : p.getIntValue();
+            }
+            return Arrays.copyOf(values, count);
+        }
+    }
+
+    /**
+     * Reads an array of ISO local date-times ("2025-10-31T06:52") or dates ("2025-10-31")
+     * into local epoch seconds (see TimeAxis).
+     */
+    public static class EpochColumn extends ValueDeserializer<long[]> {
+        @Override
+        public long[] deserialize(JsonParser p, DeserializationContext ctxt) {
+            expectArray(p, ctxt, long[].class);
+            long[] values = readEpochSeconds(p);
+            return Arrays.copyOf(values, (int) values[values.length - 1]);
+        }
+    }
+
+    // Same as EpochColumn, but keeps only start + step when the timestamps are evenly spaced.
+    public static class TimeAxisColumn extends ValueDeserializer<TimeAxis> {
+        @Override
+        public TimeAxis deserialize(JsonParser p, DeserializationContext ctxt) {
+            expectArray(p, ctxt, TimeAxis.class);
+            long[] values = readEpochSeconds(p);
+            return TimeAxis.of(values, (int) values[values.length - 1]);
+        }
+    }
+
+    private static void expectArray(JsonParser p, DeserializationContext ctxt, Class<?> type) {
+        if (!p.isExpectedStartArrayToken()) {
+            ctxt.handleUnexpectedToken(type, p);
+        }
+    }
+
+    // Reads the timestamps of the current array. To avoid a second array, the count is stored in the last slot.
+    private static long[] readEpochSeconds(JsonParser p) {
+        long[] values = new long[INITIAL_CAPACITY + 1];
+        int count = 0;
+        JsonToken token;
+        while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (count == values.length - 1) values = Arrays.copyOf(values, count * 2 + 1);
+            values[count++] = token == JsonToken.VALUE_NULL ? Forecast.MISSING_TIME
+                    : parseLocalEpochSecond(p.getStringCharacters(), p.getStringOffset(), p.getStringLength());
+        }
+        values[values.length - 1] = count;
+        return values;
+    }
+
+    /**
+     * Parses "yyyy-MM-dd" or "yyyy-MM-ddTHH:mm" without creating any objects.
+     * Anything else falls back to the java.time parsers.
+     */
+    static long parseLocalEpochSecond(char[] chars, int offset, int length) {
+        if ((length == 10 || length == 16) && chars[offset + 4] == '-' && chars[offset + 7] == '-') {
+            int year = digits(chars, offset, 4);
+            int month = digits(chars, offset + 5, 2);
+            int day = digits(chars, offset + 8, 2);
+            long seconds = epochDay(year, month, day) * 86_400L;
+            if (length == 16 && chars[offset + 10] == 'T' && chars[offset + 13] == ':') {
+                seconds += digits(chars, offset + 11, 2) * 3600L + digits(chars, offset + 14, 2) * 60L;
+                return seconds;
+            } else if (length == 10) {
+                return seconds;
+            }
+        }
+        String text = new String(chars, offset, length);
+        if (text.length() == 10) {
+            return LocalDate.parse(text).toEpochDay() * 86_400L;
+        }
+        return LocalDateTime.parse(text).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static int digits(char[] chars, int offset, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            value = value * 10 + (chars[offset + i] - '0');
+        }
+        return value;
+    }
+
+    // Days since 1970-01-01 for a proleptic Gregorian date (same result as LocalDate.toEpochDay).
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097 + dayOfEra - 719_468;
+    }
+}
@@ -3,7 +3,10 @@ package models;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import java.util.List;
+import tools.jackson.databind.annotation.JsonDeserialize;
+
+import java.time.Instant;
+import java.util.Arrays;
 
 /**
  * Main wrapper class for the entire weather forecast API JSON response.
@@ -13,10 +16,18 @@ import java.util.List;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Forecast {
 
+    // Marks a value the API didn't provide in an int column (float columns use NaN)
+    public static final int MISSING = Integer.MIN_VALUE;
+    public static final long MISSING_TIME = Long.MIN_VALUE;
+
     private double latitude;
     private double longitude;
     private String timezone;
 
+    // The location's offset from UTC. All timestamps in the response are in the location's local time.
+    @JsonProperty("utc_offset_seconds")
+    private int utcOffsetSeconds;
+
     private Hourly hourly;
     private Daily daily;
     private int weatherCode;
@@ -99,125 +110,187 @@ public class Forecast {
     }
 
 
+    /**
+     * The hourly forecast, stored column by column in primitive arrays.
+     * Entry i of every column belongs to the time getTimeAxis().epochSecondAt(i).
+     */
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Hourly {
 
         @JsonProperty("time")
-        private List<String> time;
+        @JsonDeserialize(using = ColumnDeserializers.TimeAxisColumn.class)
+        private TimeAxis timeAxis;
 
         @JsonProperty("temperature_2m")
-        private List<Double> temperature2m;
+        @JsonDeserialize(using = ColumnDeserializers.FloatColumn.class)
+        private float[] temperature2m;
 
         @JsonProperty("relative_humidity_2m")
-        private List<Integer> relativeHumidity2m;
+        @JsonDeserialize(using = ColumnDeserializers.IntColumn.class)
+        private int[] relativeHumidity2m;
 
         @JsonProperty("precipitation_probability")
-        private List<Integer> precipitationProbability;
+        @JsonDeserialize(using = ColumnDeserializers.IntColumn.class)
+        private int[] precipitationProbability;
 
         @JsonProperty("weather_code")
-        private List<Integer> weatherCode;
+        @JsonDeserialize(using = ColumnDeserializers.IntColumn.class)
+        private int[] weatherCode;
 
         @JsonProperty("wind_speed_10m")
-        private List<Double> windSpeed10m;
+        @JsonDeserialize(using = ColumnDeserializers.FloatColumn.class)
+        private float[] windSpeed10m;
 
         @JsonProperty("uv_index")
-        private List<Double> uvIndex;
+        @JsonDeserialize(using = ColumnDeserializers.FloatColumn.class)
+        private float[] uvIndex;
 
         @JsonProperty("is_day")
-        private List<Integer> isDay;
+        @JsonDeserialize(using = ColumnDeserializers.IntColumn.class)
+        private int[] isDay;
 
-        public List<Integer> getWeatherCodes(){
-            return this.weatherCode;
+        // Number of hours in the forecast
+        public int size() {
+            return timeAxis == null ? 0 : timeAxis.size();
         }
 
-        public List<Integer> getPrecipitationProbability(){
-            return precipitationProbability;
+        public TimeAxis getTimeAxis() {
+            return timeAxis;
         }
 
-        public List<Double> getWindSpeeds(){
-            return this.windSpeed10m;
-        }
-        public List<Double> getUvIndex(){
-            return this.uvIndex;
-        }
-        public List<Double> getTemperatures(){
-            return this.temperature2m;
+        /**
+         * Returns the first hours of the forecast. The columns are shared with this object, only the time axis
+         * is shortened, so the accessors (which check against the axis) never read past the slice.
+         */
+        public Hourly limit(int hours) {
+            if (timeAxis == null || hours >= size()) return this;
+            Hourly slice = new Hourly();
+            slice.timeAxis = timeAxis.limit(hours);
+            slice.temperature2m = temperature2m;
+            slice.relativeHumidity2m = relativeHumidity2m;
+            slice.precipitationProbability = precipitationProbability;
+            slice.weatherCode = weatherCode;
+            slice.windSpeed10m = windSpeed10m;
+            slice.uvIndex = uvIndex;
+            slice.isDay = isDay;
+            return slice;
         }
 
-        public List<String> getTimes(){
-            return this.time;
-        }
-
-        public List<Integer> getIsDay(){
-            return this.isDay;
-        }
+        public double getTemperature(int i) { return valueAt(temperature2m, i, size()); }
+        public int getRelativeHumidity(int i) { return valueAt(relativeHumidity2m, i, size()); }
+        public int getPrecipitationProbability(int i) { return valueAt(precipitationProbability, i, size()); }
+        public int getWeatherCode(int i) { return valueAt(weatherCode, i, size()); }
+        public double getWindSpeed(int i) { return valueAt(windSpeed10m, i, size()); }
+        public double getUvIndex(int i) { return valueAt(uvIndex, i, size()); }
+        public int getIsDay(int i) { return valueAt(isDay, i, size()); }
 
         @Override
         public String toString(){
             return "Hourly{" +
-                    "time=" + time +
-                    ", temperature2m=" + temperature2m +
-                    ", relativeHumidity2m=" + relativeHumidity2m +
-                    ", precipitationProbability=" + precipitationProbability +
-                    ", weatherCode=" + weatherCode +
-                    ", windSpeed10m=" + windSpeed10m +
-                    ", uvIndex=" + uvIndex +
+                    "time=" + timeAxis +
+                    ", temperature2m=" + Arrays.toString(temperature2m) +
+                    ", relativeHumidity2m=" + Arrays.toString(relativeHumidity2m) +
+                    ", precipitationProbability=" + Arrays.toString(precipitationProbability) +
+                    ", weatherCode=" + Arrays.toString(weatherCode) +
+                    ", windSpeed10m=" + Arrays.toString(windSpeed10m) +
+                    ", uvIndex=" + Arrays.toString(uvIndex) +
                     '}';
         }
 
     }
 
 
+    /**
+     * The daily forecast, stored column by column in primitive arrays.
+     * Sunrise and sunset are local epoch seconds (see TimeAxis).
+     */
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class Daily {
 
         @JsonProperty("time")
-        private List<String> time;
+        @JsonDeserialize(using = ColumnDeserializers.TimeAxisColumn.class)
+        private TimeAxis timeAxis;
 
         @JsonProperty("weather_code")
-        private List<Integer> weatherCode;
+        @JsonDeserialize(using = ColumnDeserializers.IntColumn.class)
+        private int[] weatherCode;
 
         @JsonProperty("temperature_2m_max")
-        private List<Double> temperature2mMax;
+        @JsonDeserialize(using = ColumnDeserializers.FloatColumn.class)
+        private float[] temperature2mMax;
 
         @JsonProperty("temperature_2m_min")
-        private List<Double> temperature2mMin;
+        @JsonDeserialize(using = ColumnDeserializers.FloatColumn.class)
+        private float[] temperature2mMin;
+
+        @JsonProperty("sunrise")
+        @JsonDeserialize(using = ColumnDeserializers.EpochColumn.class)
+        private long[] sunrise;
 
-        private List<String> sunrise;
-        private List<String> sunset;
+        @JsonProperty("sunset")
+        @JsonDeserialize(using = ColumnDeserializers.EpochColumn.class)
+        private long[] sunset;
 
         @JsonProperty("precipitation_sum")
-        private List<Double> precipitationSum;
+        @JsonDeserialize(using = ColumnDeserializers.FloatColumn.class)
+        private float[] precipitationSum;
 
         @JsonProperty("precipitation_probability_max")
-        private List<Integer> precipitationProbabilityMax;
+        @JsonDeserialize(using = ColumnDeserializers.IntColumn.class)
+        private int[] precipitationProbabilityMax;
 
-        public List<String> getTime(){
-            return time;
+        // Number of days in the forecast
+        public int size() {
+            return timeAxis == null ? 0 : timeAxis.size();
         }
 
-        public List<String> getSunrise(){
-            return sunrise;
+        public TimeAxis getTimeAxis() {
+            return timeAxis;
         }
 
-        public List<String> getSunset(){
-            return sunset;
+        // Returns the first days of the forecast, sharing the columns with this object (see Hourly.limit)
+        public Daily limit(int days) {
+            if (timeAxis == null || days >= size()) return this;
+            Daily slice = new Daily();
+            slice.timeAxis = timeAxis.limit(days);
+            slice.weatherCode = weatherCode;
+            slice.temperature2mMax = temperature2mMax;
+            slice.temperature2mMin = temperature2mMin;
+            slice.sunrise = sunrise;
+            slice.sunset = sunset;
+            slice.precipitationSum = precipitationSum;
+            slice.precipitationProbabilityMax = precipitationProbabilityMax;
+            return slice;
         }
 
-        public List<Integer> getWeatherCode(){
-            return weatherCode;
-        }
+        public int getWeatherCode(int i) { return valueAt(weatherCode, i, size()); }
+        public double getTemperature2mMax(int i) { return valueAt(temperature2mMax, i, size()); }
+        public double getTemperature2mMin(int i) { return valueAt(temperature2mMin, i, size()); }
+        public double getPrecipitationSum(int i) { return valueAt(precipitationSum, i, size()); }
+        public int getPrecipitationProbabilityMax(int i) { return valueAt(precipitationProbabilityMax, i, size()); }
 
-        public List<Double> getTemperature2mMax(){
-            return temperature2mMax;
+        // Local epoch seconds, or Forecast.MISSING_TIME if the API didn't send it
+        public long getSunrise(int i) {
+            return sunrise == null || i < 0 || i >= sunrise.length || i >= size() ? MISSING_TIME : sunrise[i];
         }
 
-        public List<Double> getTemperature2mMin(){
-            return temperature2mMin;
+        public long getSunset(int i) {
+            return sunset == null || i < 0 || i >= sunset.length || i >= size() ? MISSING_TIME : sunset[i];
         }
 
     }
 
+    // Column accessors. A column the API didn't send (or that is shorter than the time axis) reads as missing,
+    // and so does anything past the time axis, which keeps sliced forecasts (see limit) inside their slice.
+
+    private static double valueAt(float[] column, int i, int size) {
+        return column == null || i < 0 || i >= column.length || i >= size ? Double.NaN : column[i];
+    }
+
+    private static int valueAt(int[] column, int i, int size) {
+        return column == null || i < 0 || i >= column.length || i >= size ? MISSING : column[i];
+    }
+
 
     public double getLatitude() {
         return latitude;
@@ -267,41 +340,79 @@ public class Forecast {
         this.currentDetails = currentDetails;
     }
 
-    // Formatted getters
+    public int getUtcOffsetSeconds() {
+        return utcOffsetSeconds;
+    }
 
-    public double getCurrentTemperature() {
-        if (currentDetails == null) return 0.0;
-        return currentDetails.getTemperature();
+    /**
+     * Returns this forecast cut down to the first days (and the hours belonging to them).
+     * Forecasts are always fetched for the full horizon, the forecast_days setting is applied with this,
+     * so changing it doesn't need a new request. The slice shares all columns with this forecast.
+     */
+    public Forecast withDays(int days) {
+        if (daily == null || days >= daily.size()) return this;
+        days = Math.max(0, days);
+        Forecast slice = new Forecast();
+        slice.latitude = latitude;
+        slice.longitude = longitude;
+        slice.timezone = timezone;
+        slice.utcOffsetSeconds = utcOffsetSeconds;
+        slice.weatherCode = weatherCode;
+        slice.isDay = isDay;
+        slice.currentDetails = currentDetails;
+        slice.currentUnits = currentUnits;
+        slice.daily = daily.limit(days);
+        slice.hourly = hourly;
+        if (hourly != null && hourly.size() > 0) {
+            // The hours up to the start of the first day that was cut off
+            slice.hourly = hourly.limit(hourly.getTimeAxis().ceilIndex(daily.getTimeAxis().epochSecondAt(days)));
+        }
+        return slice;
     }
 
-    public String getCurrentTemperatureUnit() {
-        if (currentUnits == null) return "°";
-        return currentUnits.getTemperature();
+    // Time index lookups
+    // These work on the location's local time, not the local time of the machine running the app.
+
+    // The current time at the location, as local epoch seconds (see TimeAxis)
+    public long getLocalEpochSecondNow() {
+        return Instant.now().getEpochSecond() + utcOffsetSeconds;
+    }
+
+    // Index of the hourly entry for the current hour at the location, or -1 if there is no hourly data
+    public int getCurrentHourIndex() {
+        if (hourly == null || hourly.size() == 0) return -1;
+        return Math.max(0, hourly.getTimeAxis().floorIndex(getLocalEpochSecondNow()));
     }
 
-    public String getCurrentWindSpeedUnit() {
-        if (currentUnits == null) return "";
-        return currentUnits.getWindSpeedUnit();
+    // Index of the daily entry for today at the location, or -1 if there is no daily data
+    public int getCurrentDayIndex() {
+        if (daily == null || daily.size() == 0) return -1;
+        return Math.max(0, daily.getTimeAxis().floorIndex(getLocalEpochSecondNow()));
     }
 
-    public String getFormattedTemperature() {
-        if (currentDetails == null) return "-";
-        return String.format("%.0f%s", getCurrentTemperature(), getCurrentTemperatureUnit());
+    // Index of the first hourly entry that belongs to the given daily entry
+    public int getStartOfDayHourIndex(int dayIndex) {
+        if (hourly == null || daily == null || dayIndex < 0 || dayIndex >= daily.size()) return -1;
+        return hourly.getTimeAxis().ceilIndex(daily.getTimeAxis().epochSecondAt(dayIndex));
     }
 
-    public String getFormattedWindSpeed(){
-        if (currentDetails == null) return "-";
-        return String.format("%.1f%s", currentDetails.getWindSpeed(), getCurrentWindSpeedUnit());
+    // The hourly entries between two local times, start inclusive and end exclusive
+    public TimeAxis.Range getHourRange(long fromLocalEpochSecond, long toLocalEpochSecond) {
+        if (hourly == null) return new TimeAxis.Range(0, 0);
+        return hourly.getTimeAxis().range(fromLocalEpochSecond, toLocalEpochSecond);
     }
 
-    public String getCurrentRainUnit() {
-        if (currentUnits == null) return "mm"; // Default
-        return currentUnits.getRain();
+    // Current and today's values, in the canonical units they were fetched in (°C, km/h, mm).
+    // Views format them through a UnitConverter, so a unit change never needs a new request.
+
+    public double getCurrentTemperature() {
+        if (currentDetails == null) return Double.NaN;
+        return currentDetails.getTemperature();
     }
 
-    public String getCurrentShowersUnit() {
-        if (currentUnits == null) return "mm"; // Default
-        return currentUnits.getShowers();
+    public double getCurrentWindSpeed() {
+        if (currentDetails == null) return Double.NaN;
+        return currentDetails.getWindSpeed();
     }
 
     public int getCurrentWeatherCode() {
@@ -314,14 +425,14 @@ public class Forecast {
         return currentDetails.getIsDay();
     }
 
-    public String getFormattedDailyHigh(){
-        if (daily == null || daily.getTemperature2mMax() == null || daily.getTemperature2mMax().isEmpty()) return "-";
-        return String.format("%.0f%s", daily.getTemperature2mMax().getFirst(), getCurrentTemperatureUnit());
+    public double getDailyHigh() {
+        int today = getCurrentDayIndex();
+        return today < 0 ? Double.NaN : daily.getTemperature2mMax(today);
     }
 
-    public String getFormattedDailyLow(){
-        if (daily == null || daily.getTemperature2mMin() == null || daily.getTemperature2mMin().isEmpty()) return "-";
-        return String.format("%.0f%s", daily.getTemperature2mMin().getFirst(), getCurrentTemperatureUnit());
+    public double getDailyLow() {
+        int today = getCurrentDayIndex();
+        return today < 0 ? Double.NaN : daily.getTemperature2mMin(today);
     }
 
 
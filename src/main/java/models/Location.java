@@ -3,6 +3,7 @@ package models;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.io.Serial;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -15,10 +16,16 @@ import java.util.Arrays;
  * @JsonIgnoreProperties(ignoreUnknown = true) prevents the app from crashing
  * if the API adds new fields that don't exist in this class.
  *
- * Implements Serializable so it can be written to a file as part of a SearchEntry.
+ * Recent searches are stored with utils.ModelCodecs. Serializable is only kept
+ * so that recent searches saved by older versions of the app can still be migrated.
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Location implements Serializable {
+    // The implicit UID of the last version that was stored with Java serialization. Pinned so that adding
+    // fields or methods doesn't make the old recent_searches.ser files unreadable before they are migrated.
+    @Serial
+    private static final long serialVersionUID = -4516714214001504435L;
+
     private int id;
     private String name;
     private double latitude;
@@ -27,6 +34,8 @@ public class Location implements Serializable {
     private String admin1;
     private String country;
     private String[] postcodes;
+    // Used to rank places with the same name, 0 if unknown
+    private long population;
     private Forecast forecast;
     private LocalDateTime lastUpdate;
 
@@ -60,6 +69,7 @@ public class Location implements Serializable {
     }
 
     public String getAdmin1() { return admin1; }
+    public void setAdmin1(String admin1) { this.admin1 = admin1; }
 
     public double getElevation() { return elevation; }
     public void setElevation(double elevation) { this.elevation = elevation; }
@@ -70,6 +80,9 @@ public class Location implements Serializable {
     public String[] getPostcodes() { return postcodes; }
     public void setPostcodes(String[] postcodes) { this.postcodes = postcodes; }
 
+    public long getPopulation() { return population; }
+    public void setPopulation(long population) { this.population = population; }
+
     public String getCountryCode() { return countryCode; }
     public void setCountryCode(String countryCode) { this.countryCode = countryCode; }
 
@@ -8,7 +8,8 @@ import java.time.LocalDateTime;
  * A wrapper class that combines a Location with a timestamp.
  * This is the object that is actually saved in the "recent searches" list.
  *
- * Implements Serializable so it can be written to the .ser file by the FileHandler.
+ * Stored with utils.ModelCodecs. Serializable is only kept so that the .ser files
+ * written by older versions of the app can still be migrated.
  */
 public class SearchEntry implements Serializable {
     @Serial
@@ -26,6 +27,14 @@ public class SearchEntry implements Serializable {
         this.timestamp = LocalDateTime.now();
     }
 
+    /**
+     * Recreates a stored search entry with its original timestamp.
+     */
+    public SearchEntry(Location location, LocalDateTime timestamp) {
+        this.location = location;
+        this.timestamp = timestamp;
+    }
+
     public Location getLocation() {
         return location;
     }
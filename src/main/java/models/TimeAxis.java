@@ -0,0 +1,133 @@
+package models;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * The time column of an hourly or daily forecast.
+ * The API sends one ISO string per entry ("2025-10-31T14:00"), but those are always evenly spaced,
+ * so instead of keeping hundreds of strings we only keep the first timestamp and the step between entries.
+ *
+ * Timestamps are "local epoch seconds": the location's local date-time counted as if it were UTC.
+ * That's the same clock the API uses with timezone=auto, so no time zone math is needed to read them.
+ *
+ * Lookups ("which entry is now?") are O(1) arithmetic on evenly spaced axes
+ * and a binary search on irregular ones, so views never have to re-parse or scan timestamps.
+ */
+public final class TimeAxis {
+    private final long startEpochSecond;
+    private final long stepSeconds;
+    private final int size;
+    // Only used in the (unexpected) case that the API sends timestamps that aren't evenly spaced
+    private final long[] irregular;
+
+    private TimeAxis(long startEpochSecond, long stepSeconds, int size, long[] irregular) {
+        this.startEpochSecond = startEpochSecond;
+        this.stepSeconds = stepSeconds;
+        this.size = size;
+        this.irregular = irregular;
+    }
+
+    /**
+     * Builds an axis from parsed timestamps. Evenly spaced timestamps collapse into start + step.
+     * @param epochSeconds Local epoch seconds, only the first count values are used.
+     */
+    public static TimeAxis of(long[] epochSeconds, int count) {
+        if (count == 0) return new TimeAxis(0, 0, 0, null);
+        long step = count > 1 ? epochSeconds[1] - epochSeconds[0] : 0;
+        for (int i = 2; i < count; i++) {
+            if (epochSeconds[i] - epochSeconds[i - 1] != step) {
+                long[] copy = new long[count];
+                System.arraycopy(epochSeconds, 0, copy, 0, count);
+                return new TimeAxis(epochSeconds[0], 0, count, copy);
+            }
+        }
+        return new TimeAxis(epochSeconds[0], step, count, null);
+    }
+
+    /**
+     * A half-open range of entries, from start (inclusive) to end (exclusive).
+     */
+    public record Range(int start, int end) {
+        public int length() {
+            return end - start;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns an axis with only the first count entries. The timestamps are shared, nothing is copied.
+     */
+    public TimeAxis limit(int count) {
+        if (count >= size) return this;
+        return new TimeAxis(startEpochSecond, stepSeconds, Math.max(0, count), irregular);
+    }
+
+    /**
+     * Returns the last entry at or before the given time, or -1 if the time is before the first entry.
+     * For an hourly axis this is the hour the given time falls into.
+     */
+    public int floorIndex(long epochSecond) {
+        if (size == 0 || epochSecond < epochSecondAt(0)) return -1;
+        if (irregular != null) {
+            int found = Arrays.binarySearch(irregular, 0, size, epochSecond);
+            return found >= 0 ? found : -found - 2;
+        }
+        if (stepSeconds == 0) return 0;
+        return (int) Math.min(size - 1, (epochSecond - startEpochSecond) / stepSeconds);
+    }
+
+    /**
+     * Returns the first entry at or after the given time, or size() if the time is after the last entry.
+     */
+    public int ceilIndex(long epochSecond) {
+        int floor = floorIndex(epochSecond);
+        if (floor >= 0 && epochSecondAt(floor) == epochSecond) return floor;
+        return floor + 1;
+    }
+
+    /**
+     * Returns the entries from the given time (inclusive) up to the end time (exclusive).
+     */
+    public Range range(long fromEpochSecond, long toEpochSecond) {
+        int start = ceilIndex(fromEpochSecond);
+        int end = Math.max(start, ceilIndex(toEpochSecond));
+        return new Range(start, end);
+    }
+
+    public long getStartEpochSecond() {
+        return startEpochSecond;
+    }
+
+    public long getStepSeconds() {
+        return stepSeconds;
+    }
+
+    // The local epoch second of entry i
+    public long epochSecondAt(int i) {
+        return irregular != null ? irregular[i] : startEpochSecond + i * stepSeconds;
+    }
+
+    // Convenience for display code. Unlike epochSecondAt, this allocates.
+    public LocalDateTime localDateTimeAt(int i) {
+        return LocalDateTime.ofEpochSecond(epochSecondAt(i), 0, ZoneOffset.UTC);
+    }
+
+    public LocalDate localDateAt(int i) {
+        return LocalDate.ofEpochDay(Math.floorDiv(epochSecondAt(i), 86_400));
+    }
+
+    @Override
+    public String toString() {
+        return "TimeAxis{" +
+                "start=" + (size == 0 ? "-" : localDateTimeAt(0)) +
+                ", stepSeconds=" + stepSeconds +
+                ", size=" + size +
+                '}';
+    }
+}
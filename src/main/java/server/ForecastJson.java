@@ -0,0 +1,157 @@
+package server;
+
+import api.ReverseGeocoder;
+import models.Forecast;
+import models.Location;
+import models.TimeAxis;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the models back into the shape of the Open-Meteo responses, so a dashboard can switch from the
+ * public API to the server by changing the host only. Values are in the canonical units (°C, km/h, mm).
+ * Times are local to the location, as with timezone=auto. Missing values are written as null.
+ */
+final class ForecastJson {
+    private ForecastJson() {}
+
+    static Map<String, Object> forecast(Forecast forecast) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("latitude", forecast.getLatitude());
+        json.put("longitude", forecast.getLongitude());
+        json.put("timezone", forecast.getTimezone());
+        json.put("utc_offset_seconds", forecast.getUtcOffsetSeconds());
+
+        Forecast.CurrentDetails details = forecast.getCurrentDetails();
+        if (details != null) {
+            Map<String, Object> current = new LinkedHashMap<>();
+            current.put("temperature_2m", number(details.getTemperature()));
+            current.put("relative_humidity_2m", details.getRelativeHumidity2m());
+            current.put("apparent_temperature", number(details.getApparentTemperature()));
+            current.put("is_day", details.getIsDay());
+            current.put("weathercode", details.getWeatherCode());
+            current.put("windspeed_10m", number(details.getWindSpeed()));
+            current.put("rain", number(details.getRain()));
+            current.put("showers", number(details.getShowers()));
+            json.put("current", current);
+        }
+
+        Forecast.Hourly hourly = forecast.getHourly();
+        if (hourly != null) {
+            int n = hourly.size();
+            TimeAxis times = hourly.getTimeAxis();
+            List<String> time = new ArrayList<>(n);
+            List<Float> temperature = new ArrayList<>(n);
+            List<Integer> humidity = new ArrayList<>(n);
+            List<Integer> precipitationProbability = new ArrayList<>(n);
+            List<Integer> weatherCode = new ArrayList<>(n);
+            List<Float> windSpeed = new ArrayList<>(n);
+            List<Float> uvIndex = new ArrayList<>(n);
+            List<Integer> isDay = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                time.add(times.localDateTimeAt(i).toString());
+                temperature.add(number(hourly.getTemperature(i)));
+                humidity.add(integer(hourly.getRelativeHumidity(i)));
+                precipitationProbability.add(integer(hourly.getPrecipitationProbability(i)));
+                weatherCode.add(integer(hourly.getWeatherCode(i)));
+                windSpeed.add(number(hourly.getWindSpeed(i)));
+                uvIndex.add(number(hourly.getUvIndex(i)));
+                isDay.add(integer(hourly.getIsDay(i)));
+            }
+            Map<String, Object> columns = new LinkedHashMap<>();
+            columns.put("time", time);
+            columns.put("temperature_2m", temperature);
+            columns.put("relative_humidity_2m", humidity);
+            columns.put("precipitation_probability", precipitationProbability);
+            columns.put("weather_code", weatherCode);
+            columns.put("wind_speed_10m", windSpeed);
+            columns.put("uv_index", uvIndex);
+            columns.put("is_day", isDay);
+            json.put("hourly", columns);
+        }
+
+        Forecast.Daily daily = forecast.getDaily();
+        if (daily != null) {
+            int n = daily.size();
+            TimeAxis times = daily.getTimeAxis();
+            List<String> time = new ArrayList<>(n);
+            List<Integer> weatherCode = new ArrayList<>(n);
+            List<Float> max = new ArrayList<>(n);
+            List<Float> min = new ArrayList<>(n);
+            List<String> sunrise = new ArrayList<>(n);
+            List<String> sunset = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                time.add(times.localDateAt(i).toString());
+                weatherCode.add(integer(daily.getWeatherCode(i)));
+                max.add(number(daily.getTemperature2mMax(i)));
+                min.add(number(daily.getTemperature2mMin(i)));
+                sunrise.add(localTime(daily.getSunrise(i)));
+                sunset.add(localTime(daily.getSunset(i)));
+            }
+            Map<String, Object> columns = new LinkedHashMap<>();
+            columns.put("time", time);
+            columns.put("weather_code", weatherCode);
+            columns.put("temperature_2m_max", max);
+            columns.put("temperature_2m_min", min);
+            columns.put("sunrise", sunrise);
+            columns.put("sunset", sunset);
+            json.put("daily", columns);
+        }
+        return json;
+    }
+
+    // Same shape as the geocoding API's /v1/search
+    static Map<String, Object> locations(List<Location> locations) {
+        List<Map<String, Object>> results = new ArrayList<>(locations.size());
+        for (Location location : locations) {
+            results.add(location(location));
+        }
+        return Map.of("results", results);
+    }
+
+    // The /v1/search shape, each result with its distance from the queried point
+    static Map<String, Object> matches(List<ReverseGeocoder.Match> matches) {
+        List<Map<String, Object>> results = new ArrayList<>(matches.size());
+        for (ReverseGeocoder.Match match : matches) {
+            Map<String, Object> result = location(match.location());
+            result.put("distance_km", Math.round(match.distanceKm() * 100) / 100.0);
+            results.add(result);
+        }
+        return Map.of("results", results);
+    }
+
+    private static Map<String, Object> location(Location location) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", location.getId());
+        result.put("name", location.getName());
+        result.put("latitude", location.getLatitude());
+        result.put("longitude", location.getLongitude());
+        result.put("elevation", location.getElevation());
+        result.put("country_code", location.getCountryCode());
+        result.put("country_id", location.getCountryId());
+        result.put("country", location.getCountry());
+        result.put("admin1", location.getAdmin1());
+        result.put("population", location.getPopulation());
+        result.put("postcodes", location.getPostcodes());
+        return result;
+    }
+
+    // The columns hold floats, writing them as Float keeps "17.1" from turning into 17.100000381469727
+    private static Float number(double value) {
+        return Double.isNaN(value) ? null : (float) value;
+    }
+
+    private static Integer integer(int value) {
+        return value == Forecast.MISSING ? null : value;
+    }
+
+    private static String localTime(long localEpochSecond) {
+        return localEpochSecond == Forecast.MISSING_TIME ? null
+                : LocalDateTime.ofEpochSecond(localEpochSecond, 0, ZoneOffset.UTC).toString();
+    }
+}
@@ -0,0 +1,276 @@
+package server;
+
+import api.ForecastLookup;
+import models.Forecast;
+import models.Location;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+import utils.MetricsRegistry;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes forecast changes to subscribers (see WeatherServer's /subscribe).
+ *
+ * Every location with at least one subscriber has a topic with a single refresh loop: a virtual thread that
+ * re-fetches the forecast once per interval, however many clients are subscribed, and compares it with the
+ * previous one. Only a forecast whose content changed is handed on. A re-fetch that brought the same data
+ * (304 Not Modified, or an identical response) wakes nobody. The loop ends when the last subscriber leaves.
+ *
+ * A subscriber has no queue of events, only a mailbox with the latest unsent forecast per location, so a slow
+ * client skips versions instead of piling them up. An idle subscriber is a parked virtual thread and a few
+ * map entries, which is what keeps thousands of them cheap.
+ */
+public class ForecastPushHub {
+    // Spreads the refreshes of topics created at the same time (e.g. after a restart) over this part of the interval
+    private static final double JITTER = 0.1;
+    // Until a topic has its first forecast, failed fetches are retried after this long, doubling up to the interval
+    private static final long FIRST_RETRY_MILLIS = 2_000;
+
+    /**
+     * A changed forecast for one of the subscribed locations.
+     * @param publishedAtNanos When the change was noticed (System.nanoTime()), to measure the delivery delay.
+     */
+    public record Update(String key, Forecast forecast, long publishedAtNanos) {}
+
+    private final ForecastLookup forecastLookup;
+    private final Duration interval;
+    private final ConcurrentHashMap<String, Topic> topics = new ConcurrentHashMap<>();
+    private final ObjectMapper mapper = JsonMapper.builder().build();
+
+    private final AtomicLong subscribers = new AtomicLong();
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+
+    /**
+     * @param interval How often every subscribed location is re-fetched.
+     */
+    public ForecastPushHub(ForecastLookup forecastLookup, Duration interval) {
+        this.forecastLookup = forecastLookup;
+        this.interval = interval;
+
+        MetricsRegistry.get().gauge("push.subscribers", subscribers::get);
+        MetricsRegistry.get().gauge("push.topics", topics::size);
+        MetricsRegistry.get().gauge("push.changes", changes::get);
+        MetricsRegistry.get().gauge("push.unchanged", unchanged::get);
+    }
+
+    /**
+     * The key a location is published under. Uses the same rounding as the ForecastLookup cache,
+     * so subscribers of nearby points share a topic exactly when they would share a cached forecast.
+     */
+    public static String key(Location location) {
+        return String.format(Locale.ROOT, "%.2f,%.2f", location.getLatitude(), location.getLongitude());
+    }
+
+    /**
+     * Subscribes to the given locations. The current forecast of every location that already has one is
+     * delivered right away, the others follow as soon as their first fetch completes.
+     * Close the subscriber when the client goes away.
+     */
+    public Subscriber subscribe(List<Location> locations) {
+        Subscriber subscriber = new Subscriber();
+        subscribers.incrementAndGet();
+        for (Location location : locations) {
+            String key = key(location);
+            if (subscriber.keys.contains(key)) continue;
+            subscriber.keys.add(key);
+            Topic topic = topics.compute(key, (k, existing) -> {
+                Topic t = existing != null ? existing : new Topic(k, location);
+                t.subscribers.add(subscriber);
+                return t;
+            });
+            topic.start();
+            Forecast latest = topic.latest;
+            if (latest != null) {
+                subscriber.offer(new Update(key, latest, System.nanoTime()));
+            }
+        }
+        return subscriber;
+    }
+
+    // Stops all refresh loops. Subscribers stay open until their connections are closed.
+    public void close() {
+        topics.values().forEach(topic -> topic.loop.interrupt());
+        topics.clear();
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        for (String key : subscriber.keys) {
+            topics.computeIfPresent(key, (k, topic) -> {
+                topic.subscribers.remove(subscriber);
+                if (!topic.subscribers.isEmpty()) return topic;
+                topic.loop.interrupt();
+                return null;
+            });
+        }
+        subscribers.decrementAndGet();
+    }
+
+    // Hash of everything the API sent for the location, to tell a changed forecast from a re-fetched one
+    private byte[] fingerprint(Forecast forecast) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(mapper.writeValueAsBytes(ForecastJson.forecast(forecast)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * One subscribed location: its subscribers, the last published forecast and the loop refreshing it.
+     */
+    private final class Topic {
+        private final String key;
+        private final Location location;
+        private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        private final Thread loop;
+        private volatile Forecast latest;
+        private byte[] fingerprint;
+
+        private Topic(String key, Location location) {
+            this.key = key;
+            this.location = location;
+            this.loop = Thread.ofVirtual().name("push-" + key).unstarted(this::refreshLoop);
+        }
+
+        // Started outside of topics.compute, the loop itself reads the map
+        private synchronized void start() {
+            if (loop.getState() == Thread.State.NEW) {
+                loop.start();
+            }
+        }
+
+        private void refreshLoop() {
+            // The first round takes what the cache has, so a new topic for a popular place costs no request
+            boolean first = true;
+            long delay = (long) (interval.toMillis() * ThreadLocalRandom.current().nextDouble(1 - JITTER, 1 + JITTER));
+            long retry = FIRST_RETRY_MILLIS;
+            while (topics.get(key) == this) {
+                long start = System.nanoTime();
+                try {
+                    Forecast forecast = first
+                            ? forecastLookup.getForecastAsync(location).join()
+                            : forecastLookup.refreshForecasts(List.of(location)).join().get(0);
+                    MetricsRegistry.get().timer("push.refresh").recordSince(start);
+                    if (forecast != null) {
+                        first = false;
+                        publish(forecast);
+                    }
+                } catch (CancellationException | CompletionException e) {
+                    System.out.println("Could not refresh " + key + ": " + e.getMessage());
+                }
+                // New subscribers see nothing until the first forecast arrives, so that one doesn't wait a whole interval
+                long sleep;
+                if (first) {
+                    sleep = Math.min(retry, interval.toMillis());
+                    retry *= 2;
+                } else {
+                    sleep = delay;
+                    delay = interval.toMillis();
+                }
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void publish(Forecast forecast) {
+            if (forecast == latest) {
+                unchanged.incrementAndGet();
+                return;
+            }
+            byte[] newFingerprint = fingerprint(forecast);
+            if (Arrays.equals(newFingerprint, fingerprint)) {
+                unchanged.incrementAndGet();
+                return;
+            }
+            latest = forecast;
+            fingerprint = newFingerprint;
+            changes.incrementAndGet();
+            Update update = new Update(key, forecast, System.nanoTime());
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(update);
+            }
+        }
+    }
+
+    /**
+     * One client's subscription. The client's thread takes the updates with next().
+     */
+    public final class Subscriber implements AutoCloseable {
+        private final List<String> keys = new ArrayList<>();
+        // Latest unsent update per location. A newer one replaces the older one.
+        private final Map<String, Update> pending = new LinkedHashMap<>();
+        // A lock rather than synchronized/wait, which would pin the waiting virtual thread to its carrier
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition ready = lock.newCondition();
+        private boolean closed;
+
+        private Subscriber() {}
+
+        private void offer(Update update) {
+            lock.lock();
+            try {
+                pending.put(update.key(), update);
+                ready.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Waits for the next update.
+         * @return The update, or null if there was none within the timeout.
+         */
+        public Update next(long timeout, TimeUnit unit) throws InterruptedException {
+            lock.lock();
+            try {
+                long nanos = unit.toNanos(timeout);
+                while (pending.isEmpty()) {
+                    if (nanos <= 0) return null;
+                    nanos = ready.awaitNanos(nanos);
+                }
+                Iterator<Update> oldest = pending.values().iterator();
+                Update update = oldest.next();
+                oldest.remove();
+                return update;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (closed) return;
+                closed = true;
+                pending.clear();
+            } finally {
+                lock.unlock();
+            }
+            unsubscribe(this);
+        }
+    }
+}
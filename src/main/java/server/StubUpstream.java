@@ -0,0 +1,269 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in for both Open-Meteo APIs, for load testing WeatherServer (or BatchForecast) without
+ * touching the real service:
+ *
+ * java server.StubUpstream --port 9000 --latency-ms 80 [--change-seconds 60]
+ * java server.WeatherServer --upstream http://localhost:9000
+ *
+ * /v1/forecast answers any coordinates (also comma-separated lists) with a made-up 16-day forecast in canonical
+ * units, /v1/search answers any name with one made-up place. Every response is delayed by the given latency,
+ * like a real round trip. With --change-seconds the temperatures shift every so many seconds, so the forecasts
+ * change the way real ones do (every 15 minutes or so), which is what /subscribe pushes. The number of requests received is printed once per second while it changes,
+ * which is the number to compare with the number of client requests when checking the coalescing.
+ */
+public class StubUpstream {
+    private static final int HOURS = 16 * 24;
+
+    private final HttpServer server;
+    private final long latencyMillis;
+    private final long changeSeconds;
+    private final ObjectMapper mapper = JsonMapper.builder().build();
+    private final AtomicLong forecastRequests = new AtomicLong();
+    private final AtomicLong searchRequests = new AtomicLong();
+
+    /**
+     * @param changeSeconds How often the forecasts change, 0 for never.
+     */
+    public StubUpstream(InetSocketAddress address, long latencyMillis, long changeSeconds) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.changeSeconds = changeSeconds;
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/v1/forecast", exchange -> answer(exchange, forecastRequests, this::forecasts));
+        server.createContext("/v1/search", exchange -> answer(exchange, searchRequests, this::search));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = 9000;
+        long latencyMillis = 50;
+        long changeSeconds = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port" -> port = Integer.parseInt(args[++i]);
+                    case "--latency-ms" -> latencyMillis = Long.parseLong(args[++i]);
+                    case "--change-seconds" -> changeSeconds = Long.parseLong(args[++i]);
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Usage: StubUpstream [--port N] [--latency-ms N] [--change-seconds N]");
+            System.exit(2);
+        }
+
+        StubUpstream stub = new StubUpstream(new InetSocketAddress("127.0.0.1", port), latencyMillis, changeSeconds);
+        stub.start();
+        System.out.println("Stub upstream on http://127.0.0.1:" + stub.getPort() + ", " + latencyMillis + " ms per response");
+        long reported = -1;
+        while (true) {
+            Thread.sleep(1000);
+            long total = stub.getForecastRequests() + stub.getSearchRequests();
+            if (total != reported) {
+                System.out.println(stub.getForecastRequests() + " forecast requests, " + stub.getSearchRequests() + " search requests");
+                reported = total;
+            }
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getForecastRequests() {
+        return forecastRequests.get();
+    }
+
+    public long getSearchRequests() {
+        return searchRequests.get();
+    }
+
+    private interface Responder {
+        Object respond(Map<String, String> params);
+    }
+
+    private void answer(HttpExchange exchange, AtomicLong counter, Responder responder) throws IOException {
+        try (exchange) {
+            counter.incrementAndGet();
+            Map<String, String> params = new LinkedHashMap<>();
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                for (String pair : query.split("&")) {
+                    int eq = pair.indexOf('=');
+                    if (eq > 0) params.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+                }
+            }
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            Thread.sleep(latencyMillis);
+
+            byte[] body;
+            int status = 200;
+            try {
+                body = mapper.writeValueAsBytes(responder.respond(params));
+            } catch (RuntimeException e) {
+                status = 400;
+                body = mapper.writeValueAsBytes(Map.of("error", true, "reason", String.valueOf(e.getMessage())));
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // One forecast per coordinate pair, a single object for one location and an array for several (like the API)
+    private Object forecasts(Map<String, String> params) {
+        String[] latitudes = params.get("latitude").split(",");
+        String[] longitudes = params.get("longitude").split(",");
+        if (latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("Parameter 'latitude' and 'longitude' must have the same number of elements");
+        }
+        List<Object> forecasts = new ArrayList<>(latitudes.length);
+        for (int i = 0; i < latitudes.length; i++) {
+            forecasts.add(forecast(Double.parseDouble(latitudes[i]), Double.parseDouble(longitudes[i])));
+        }
+        return forecasts.size() == 1 ? forecasts.get(0) : forecasts;
+    }
+
+    // Temperatures follow the latitude and the time of day, so different places and hours get different values
+    private Map<String, Object> forecast(double latitude, double longitude) {
+        LocalDateTime start = LocalDate.now().atStartOfDay();
+        double base = 25 - Math.abs(latitude) / 3;
+        if (changeSeconds > 0) {
+            base += System.currentTimeMillis() / 1000 / changeSeconds % 10 * 0.1;
+        }
+
+        List<String> time = new ArrayList<>(HOURS);
+        List<Double> temperature = new ArrayList<>(HOURS);
+        List<Integer> humidity = new ArrayList<>(HOURS);
+        List<Integer> isDay = new ArrayList<>(HOURS);
+        List<Integer> weatherCode = new ArrayList<>(HOURS);
+        List<Double> windSpeed = new ArrayList<>(HOURS);
+        List<Integer> precipitationProbability = new ArrayList<>(HOURS);
+        List<Double> uvIndex = new ArrayList<>(HOURS);
+        for (int h = 0; h < HOURS; h++) {
+            int hourOfDay = h % 24;
+            boolean day = hourOfDay >= 7 && hourOfDay < 19;
+            time.add(start.plusHours(h).toString());
+            temperature.add(round(base + 5 * Math.sin((hourOfDay - 9) * Math.PI / 12)));
+            humidity.add(60 + hourOfDay);
+            isDay.add(day ? 1 : 0);
+            weatherCode.add(h / 24 % 4 == 3 ? 61 : h / 24 % 4);
+            windSpeed.add(round(5 + (h % 7) * 1.5));
+            precipitationProbability.add(h / 24 % 4 == 3 ? 70 : 5);
+            uvIndex.add(day ? round(4 * Math.sin((hourOfDay - 7) * Math.PI / 12)) : 0.0);
+        }
+
+        List<String> days = new ArrayList<>();
+        List<Integer> dailyCode = new ArrayList<>();
+        List<Double> max = new ArrayList<>();
+        List<Double> min = new ArrayList<>();
+        List<String> sunrise = new ArrayList<>();
+        List<String> sunset = new ArrayList<>();
+        for (int d = 0; d < HOURS / 24; d++) {
+            LocalDate date = start.toLocalDate().plusDays(d);
+            days.add(date.toString());
+            dailyCode.add(weatherCode.get(d * 24));
+            max.add(round(base + 5));
+            min.add(round(base - 5));
+            sunrise.add(date.atTime(6, 30).toString());
+            sunset.add(date.atTime(18, 45).toString());
+        }
+
+        int nowIndex = LocalDateTime.now().getHour();
+        Map<String, Object> current = new LinkedHashMap<>();
+        current.put("time", time.get(nowIndex));
+        current.put("temperature_2m", temperature.get(nowIndex));
+        current.put("relative_humidity_2m", humidity.get(nowIndex));
+        current.put("apparent_temperature", round(temperature.get(nowIndex) - 1));
+        current.put("is_day", isDay.get(nowIndex));
+        current.put("weathercode", weatherCode.get(nowIndex));
+        current.put("windspeed_10m", windSpeed.get(nowIndex));
+        current.put("rain", 0.0);
+        current.put("showers", 0.0);
+
+        Map<String, Object> hourly = new LinkedHashMap<>();
+        hourly.put("time", time);
+        hourly.put("temperature_2m", temperature);
+        hourly.put("relative_humidity_2m", humidity);
+        hourly.put("is_day", isDay);
+        hourly.put("weather_code", weatherCode);
+        hourly.put("wind_speed_10m", windSpeed);
+        hourly.put("precipitation_probability", precipitationProbability);
+        hourly.put("uv_index", uvIndex);
+
+        Map<String, Object> daily = new LinkedHashMap<>();
+        daily.put("time", days);
+        daily.put("weather_code", dailyCode);
+        daily.put("temperature_2m_max", max);
+        daily.put("temperature_2m_min", min);
+        daily.put("sunrise", sunrise);
+        daily.put("sunset", sunset);
+
+        Map<String, Object> forecast = new LinkedHashMap<>();
+        forecast.put("latitude", latitude);
+        forecast.put("longitude", longitude);
+        forecast.put("timezone", "GMT");
+        forecast.put("utc_offset_seconds", 0);
+        forecast.put("current_units", Map.of("temperature_2m", "°C", "windspeed_10m", "km/h", "rain", "mm", "showers", "mm"));
+        forecast.put("current", current);
+        forecast.put("hourly", hourly);
+        forecast.put("daily", daily);
+        return forecast;
+    }
+
+    // The place's coordinates are derived from the name, so every name is a different place
+    private Object search(Map<String, String> params) {
+        String name = params.get("name");
+        int hash = name.toLowerCase(Locale.ROOT).hashCode();
+        Map<String, Object> place = new LinkedHashMap<>();
+        place.put("id", hash & 0x7fffffff);
+        place.put("name", name);
+        place.put("latitude", round(Math.floorMod(hash, 18000) / 100.0 - 90));
+        place.put("longitude", round(Math.floorMod(hash / 18000, 36000) / 100.0 - 180));
+        place.put("elevation", 100.0);
+        place.put("country_code", "XX");
+        place.put("country", "Stubland");
+        place.put("admin1", "Stub County");
+        return Map.of("results", List.of(place));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+}
@@ -0,0 +1,543 @@
+package server;
+
+import api.ForecastLookup;
+import api.Geocoder;
+import api.HttpClientService;
+import api.PlaceIndex;
+import api.ReverseGeocoder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import models.Forecast;
+import models.Location;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+import utils.Histogram;
+import utils.LruCache;
+import utils.MetricsRegistry;
+import utils.Settings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Server mode: a small HTTP API in front of Open-Meteo for dashboards and scripts on the local network.
+ *
+ * Usage: WeatherServer [--port N] [--bind ADDRESS] [--upstream URL] [--push-interval-seconds N]
+ *
+ * Endpoints (GET or HEAD):
+ * - /forecast?latitude=..&longitude=..[&forecast_days=N]  the forecast in the forecast API's JSON shape (see ForecastJson)
+ * - /geocode?name=..                                        matching locations, like the geocoding API's /v1/search
+ * - /reverse?latitude=..&longitude=..[&count=N][&radius_km=R]  the N nearest known places (default 1), or all
+ *                                                           within R km, closest first, with their distance_km
+ * - /subscribe?locations=lat,lon;lat,lon..[&forecast_days=N]  a server-sent event stream with a "forecast" event
+ *                                                           whenever the forecast of one of the locations changes
+ * - /metrics                                                the metrics dump as plain text
+ *
+ * All clients share one ForecastLookup and one Geocoder, and with them their caches. Identical requests
+ * that arrive while the first one is still being answered wait for its result instead of doing the work again:
+ * ForecastLookup coalesces the upstream requests, this class coalesces the rest (lookup + rendering).
+ * Rendered responses are kept for as long as the forecast behind them is the cached one, so a hundred dashboards
+ * showing the same city cost one upstream request per cache TTL and one serialization per refresh.
+ *
+ * Every exchange runs on its own virtual thread, so the handlers simply block on the lookups,
+ * and a subscriber's thread simply waits for its next update (see ForecastPushHub).
+ * --upstream replaces both Open-Meteo hosts with another server, e.g. StubUpstream for load tests.
+ */
+public class WeatherServer {
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_FORECAST_DAYS = 7;
+    // Connections waiting to be accepted. The system default (50) makes a burst of new clients wait for SYN retries.
+    private static final int BACKLOG = 1024;
+    // Place names don't change, clients may keep search results for a while
+    private static final int GEOCODE_MAX_AGE_SECONDS = 3600;
+    // Limits of /reverse, a radius query over a dense index could otherwise return tens of thousands of places
+    private static final int MAX_REVERSE_COUNT = 100;
+    private static final double MAX_REVERSE_RADIUS_KM = 200;
+    // A subscription may watch at most this many locations
+    private static final int MAX_SUBSCRIBED_LOCATIONS = 100;
+    // An idle event stream gets a comment line this often, so proxies keep it open and dead clients are noticed
+    private static final long HEARTBEAT_SECONDS = 20;
+
+    /**
+     * A response body, serialized once and sent to every client asking for the same thing.
+     * source is the cached object it was rendered from, the body is reused as long as the cache returns that object.
+     */
+    private record Rendered(Object source, byte[] body, byte[] gzipped, String etag) {}
+
+    private final ForecastLookup forecastLookup;
+    private final Geocoder geocoder;
+    private final ForecastPushHub pushHub;
+    private volatile ReverseGeocoder reverseGeocoder;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ObjectMapper mapper = JsonMapper.builder().build();
+
+    private final LruCache<String, Rendered> rendered;
+    // Requests still being answered, by response key. Later identical requests join them.
+    private final ConcurrentHashMap<String, CompletableFuture<Rendered>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Creates the server. It doesn't accept connections before start() is called.
+     * @param address The address to listen on. Port 0 picks a free port (see getPort).
+     * @param pushInterval How often the locations with subscribers are re-fetched.
+     */
+    public WeatherServer(ForecastLookup forecastLookup, Geocoder geocoder, InetSocketAddress address, int cacheSize,
+                         Duration pushInterval) throws IOException {
+        this.forecastLookup = forecastLookup;
+        this.geocoder = geocoder;
+        this.pushHub = new ForecastPushHub(forecastLookup, pushInterval);
+        // The entries only stay valid while their source is cached, so they don't need a TTL of their own
+        this.rendered = new LruCache<>(cacheSize, Duration.ofDays(1));
+
+        this.server = HttpServer.create(address, BACKLOG);
+        server.setExecutor(executor);
+        server.createContext("/forecast", timed("server.forecast", this::handleForecast));
+        server.createContext("/geocode", timed("server.geocode", this::handleGeocode));
+        server.createContext("/reverse", timed("server.reverse", this::handleReverse));
+        server.createContext("/metrics", timed("server.metrics", this::handleMetrics));
+        // Not timed, an exchange lasts as long as the subscription (push.delivery measures the events instead)
+        server.createContext("/subscribe", timed(null, this::handleSubscribe));
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                sendError(exchange, 404, "Unknown endpoint " + exchange.getRequestURI().getPath());
+            }
+        });
+
+        MetricsRegistry.get().gauge("server.coalesced", coalesced::get);
+        MetricsRegistry.get().gauge("server.rendered.hit_ratio", rendered::getHitRatio);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        String bind = "0.0.0.0";
+        String upstream = null;
+        Integer pushIntervalSeconds = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port" -> port = Integer.parseInt(args[++i]);
+                    case "--bind" -> bind = args[++i];
+                    case "--upstream" -> upstream = args[++i];
+                    case "--push-interval-seconds" -> pushIntervalSeconds = Integer.parseInt(args[++i]);
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Usage: WeatherServer [--port N] [--bind ADDRESS] [--upstream URL] [--push-interval-seconds N]");
+            System.exit(2);
+        }
+
+        Settings settings = new Settings();
+        HttpClientService httpClientService = new HttpClientService(settings);
+        ForecastLookup forecastLookup = new ForecastLookup(settings, httpClientService);
+        Geocoder geocoder = new Geocoder(httpClientService);
+        PlaceIndex placeIndex = PlaceIndex.open(Path.of(settings.getProperties().getProperty("places_index_file", "places.idx")));
+        geocoder.setPlaceIndex(placeIndex);
+        if (upstream == null) {
+            httpClientService.prewarm();
+        } else {
+            // The stub (or mirror) serves both APIs under their usual paths
+            String base = upstream.endsWith("/") ? upstream.substring(0, upstream.length() - 1) : upstream;
+            forecastLookup.setApiUrl(base + "/v1/forecast");
+            geocoder.setApiUrl(base + "/v1/search");
+        }
+        MetricsRegistry.get().registerMBean();
+
+        // One rendered response per cached forecast and a few forecast_days variants of each
+        WeatherServer server = new WeatherServer(forecastLookup, geocoder, new InetSocketAddress(bind, port),
+                settings.getIntProperty("forecast_cache_size", 32) * 4,
+                // By default a subscribed location is refreshed whenever its cached forecast goes stale
+                pushIntervalSeconds != null ? Duration.ofSeconds(Math.max(1, pushIntervalSeconds))
+                        : Duration.ofMinutes(settings.getIntProperty("forecast_cache_ttl_minutes", 15)));
+        if (placeIndex != null) {
+            // Built before start, so /reverse never answers 503 just because the server was restarted
+            ReverseGeocoder reverseGeocoder = new ReverseGeocoder(placeIndex, null);
+            server.setReverseGeocoder(reverseGeocoder);
+            geocoder.setReverseGeocoder(reverseGeocoder);
+        }
+        server.start();
+        System.out.println("Serving on http://" + bind + ":" + server.getPort()
+                + (upstream == null ? "" : ", upstream " + upstream));
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            httpClientService.shutdown();
+            System.out.print(MetricsRegistry.get().dump());
+        }));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    // Lets the open exchanges finish for up to a second, then stops
+    public void stop() {
+        pushHub.close();
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * Sets the places /reverse answers from. Until it is set /reverse responds with 503.
+     */
+    public void setReverseGeocoder(ReverseGeocoder reverseGeocoder) {
+        this.reverseGeocoder = reverseGeocoder;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleForecast(HttpExchange exchange) throws IOException {
+        Map<String, String> params = queryParameters(exchange);
+        double latitude;
+        double longitude;
+        int days;
+        try {
+            latitude = Double.parseDouble(params.get("latitude"));
+            longitude = Double.parseDouble(params.get("longitude"));
+            days = params.containsKey("forecast_days") ? Integer.parseInt(params.get("forecast_days")) : DEFAULT_FORECAST_DAYS;
+        } catch (NullPointerException | NumberFormatException e) {
+            sendError(exchange, 400, "latitude and longitude are required, forecast_days must be a whole number");
+            return;
+        }
+        if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            sendError(exchange, 400, "latitude must be within -90..90 and longitude within -180..180");
+            return;
+        }
+        if (days < 1 || days > ForecastLookup.MAX_FORECAST_DAYS) {
+            sendError(exchange, 400, "forecast_days must be within 1.." + ForecastLookup.MAX_FORECAST_DAYS);
+            return;
+        }
+
+        Location location = new Location();
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        // Same rounding as ForecastLookup's cache key, so requests sharing a forecast share the response too
+        String key = String.format(Locale.ROOT, "forecast:%.2f,%.2f:%d", latitude, longitude, days);
+        Rendered response = await(key, () -> forecastLookup.getForecastAsync(location)
+                .thenApply(forecast -> forecast == null ? null
+                        : render(key, forecast, () -> ForecastJson.forecast(forecast.withDays(days)))));
+        if (response == null) {
+            sendError(exchange, 502, "The forecast is not available right now");
+            return;
+        }
+        long maxAge = Math.max(0, (forecastLookup.getCacheExpiry(location) - System.currentTimeMillis()) / 1000);
+        send(exchange, response, maxAge);
+    }
+
+    private void handleGeocode(HttpExchange exchange) throws IOException {
+        String name = queryParameters(exchange).get("name");
+        if (name == null || name.isBlank()) {
+            sendError(exchange, 400, "name is required");
+            return;
+        }
+        String key = "geocode:" + Geocoder.normalizeQuery(name);
+        // A failed search must not look like an empty result, clients would cache "no such place" for an hour
+        Rendered response = await(key, () -> geocoder.searchLocationsByNameOrFailAsync(name)
+                .thenApply(locations -> render(key, locations, () -> ForecastJson.locations(locations))));
+        if (response == null) {
+            sendError(exchange, 502, "The search is not available right now");
+            return;
+        }
+        send(exchange, response, GEOCODE_MAX_AGE_SECONDS);
+    }
+
+    // Answered from memory in microseconds, so neither coalesced nor cached
+    private void handleReverse(HttpExchange exchange) throws IOException {
+        Map<String, String> params = queryParameters(exchange);
+        double latitude;
+        double longitude;
+        int count;
+        Double radiusKm;
+        try {
+            latitude = Double.parseDouble(params.get("latitude"));
+            longitude = Double.parseDouble(params.get("longitude"));
+            count = params.containsKey("count") ? Integer.parseInt(params.get("count")) : 1;
+            radiusKm = params.containsKey("radius_km") ? Double.parseDouble(params.get("radius_km")) : null;
+        } catch (NullPointerException | NumberFormatException e) {
+            sendError(exchange, 400, "latitude and longitude are required, count and radius_km must be numbers");
+            return;
+        }
+        if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            sendError(exchange, 400, "latitude must be within -90..90 and longitude within -180..180");
+            return;
+        }
+        if (count < 1 || count > MAX_REVERSE_COUNT) {
+            sendError(exchange, 400, "count must be within 1.." + MAX_REVERSE_COUNT);
+            return;
+        }
+        if (radiusKm != null && !(radiusKm >= 0 && radiusKm <= MAX_REVERSE_RADIUS_KM)) {
+            sendError(exchange, 400, "radius_km must be within 0.." + (int) MAX_REVERSE_RADIUS_KM);
+            return;
+        }
+        ReverseGeocoder reverse = reverseGeocoder;
+        if (reverse == null) {
+            sendError(exchange, 503, "Reverse geocoding is not available, no place index is loaded");
+            return;
+        }
+
+        List<ReverseGeocoder.Match> matches = radiusKm != null
+                ? reverse.within(latitude, longitude, radiusKm)
+                : reverse.nearest(latitude, longitude, count);
+        if (matches.size() > MAX_REVERSE_COUNT) {
+            matches = matches.subList(0, MAX_REVERSE_COUNT);
+        }
+        send(exchange, serialize(matches, ForecastJson.matches(matches)), GEOCODE_MAX_AGE_SECONDS);
+    }
+
+    /**
+     * Streams the forecasts of the subscribed locations as server-sent events, one when the subscription starts
+     * and then one whenever a location's forecast changes within the requested days:
+     * <pre>
+     * event: forecast
+     * data: {"location":"45.81,15.98","forecast":{...same as /forecast...}}
+     * </pre>
+     * Runs until the client disconnects.
+     */
+    private void handleSubscribe(HttpExchange exchange) throws IOException {
+        Map<String, String> params = queryParameters(exchange);
+        String list = params.get("locations");
+        List<Location> locations = new ArrayList<>();
+        int days;
+        try {
+            for (String point : list.split(";")) {
+                String[] parts = point.split(",");
+                Location location = new Location();
+                location.setLatitude(Double.parseDouble(parts[0].trim()));
+                location.setLongitude(Double.parseDouble(parts[1].trim()));
+                if (Math.abs(location.getLatitude()) > 90 || Math.abs(location.getLongitude()) > 180) {
+                    throw new IllegalArgumentException("coordinates out of range");
+                }
+                locations.add(location);
+            }
+            days = params.containsKey("forecast_days") ? Integer.parseInt(params.get("forecast_days")) : DEFAULT_FORECAST_DAYS;
+        } catch (RuntimeException e) {
+            // Covers a missing list, bad numbers, missing longitudes and coordinates out of range
+            sendError(exchange, 400, "locations must be a list of latitude,longitude pairs separated by semicolons");
+            return;
+        }
+        if (locations.size() > MAX_SUBSCRIBED_LOCATIONS) {
+            sendError(exchange, 400, "At most " + MAX_SUBSCRIBED_LOCATIONS + " locations per subscription");
+            return;
+        }
+        if (days < 1 || days > ForecastLookup.MAX_FORECAST_DAYS) {
+            sendError(exchange, 400, "forecast_days must be within 1.." + ForecastLookup.MAX_FORECAST_DAYS);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            // The headers a GET would get, but no stream: a HEAD response can't carry events
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        Histogram delivery = MetricsRegistry.get().timer("push.delivery");
+        // What this client was sent last per location. A change outside its days doesn't change its body.
+        Map<String, Rendered> sent = new HashMap<>();
+        try (ForecastPushHub.Subscriber subscriber = pushHub.subscribe(locations)) {
+            out.write(": subscribed\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            while (true) {
+                ForecastPushHub.Update update = subscriber.next(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+                if (update == null) {
+                    // Fails once the client is gone, which ends the subscription
+                    out.write(":\n\n".getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    continue;
+                }
+                Forecast forecast = update.forecast();
+                Rendered response = render("forecast:" + update.key() + ":" + days, forecast,
+                        () -> ForecastJson.forecast(forecast.withDays(days)));
+                Rendered previous = sent.put(update.key(), response);
+                if (previous != null && Arrays.equals(previous.body(), response.body())) {
+                    continue;
+                }
+                out.write(("event: forecast\ndata: {\"location\":\"" + update.key() + "\",\"forecast\":")
+                        .getBytes(StandardCharsets.UTF_8));
+                out.write(response.body());
+                out.write("}\n\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                delivery.recordSince(update.publishedAtNanos());
+            }
+        } catch (IOException e) {
+            // The client disconnected, which is how a subscription normally ends
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        byte[] body = MetricsRegistry.get().dump().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        sendBody(exchange, 200, body);
+    }
+
+    /**
+     * Runs the lookup for the key, or waits for the one that is already running.
+     * @return The response, or null if the lookup failed.
+     */
+    private Rendered await(String key, Supplier<CompletableFuture<Rendered>> lookup) {
+        CompletableFuture<Rendered> flight = new CompletableFuture<>();
+        CompletableFuture<Rendered> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            flight = running;
+        } else {
+            CompletableFuture<Rendered> leader = flight;
+            try {
+                lookup.get().whenComplete((response, e) -> {
+                    inFlight.remove(key, leader);
+                    if (e != null) leader.completeExceptionally(e); else leader.complete(response);
+                });
+            } catch (RuntimeException e) {
+                inFlight.remove(key, leader);
+                leader.completeExceptionally(e);
+            }
+        }
+        try {
+            return flight.join();
+        } catch (CancellationException | CompletionException e) {
+            System.out.println("Request for " + key + " failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Reuses the rendered body if it was made from the same cached object, otherwise serializes it once
+    private Rendered render(String key, Object source, Supplier<Object> json) {
+        Rendered cached = rendered.getFresh(key);
+        if (cached != null && cached.source() == source) {
+            return cached;
+        }
+        Rendered response = serialize(source, json.get());
+        rendered.put(key, response);
+        return response;
+    }
+
+    private Rendered serialize(Object source, Object json) {
+        byte[] body = mapper.writeValueAsBytes(json);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return new Rendered(source, body, gzip(body),
+                String.format(Locale.ROOT, "\"%08x-%x\"", crc.getValue(), body.length));
+    }
+
+    private void send(HttpExchange exchange, Rendered response, long maxAgeSeconds) throws IOException {
+        var headers = exchange.getResponseHeaders();
+        headers.set("ETag", response.etag());
+        headers.set("Cache-Control", "max-age=" + maxAgeSeconds);
+        headers.set("Vary", "Accept-Encoding");
+        if (response.etag().equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        headers.set("Content-Type", "application/json; charset=utf-8");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip") && response.gzipped().length < response.body().length) {
+            headers.set("Content-Encoding", "gzip");
+            sendBody(exchange, 200, response.gzipped());
+        } else {
+            sendBody(exchange, 200, response.body());
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String reason) throws IOException {
+        // The same error format as the Open-Meteo APIs
+        byte[] body = mapper.writeValueAsBytes(Map.of("error", true, "reason", reason));
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        // An error is about this moment only, nobody should keep it
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        sendBody(exchange, status, body);
+    }
+
+    private static void sendBody(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Wraps a handler with the method check, error handling and a latency timer for the endpoint.
+     * The timer covers the whole exchange, from the parsed request to the last byte written. A null name skips the timer.
+     */
+    private HttpHandler timed(String timerName, HttpHandler handler) {
+        Histogram timer = timerName == null ? null : MetricsRegistry.get().timer(timerName);
+        return exchange -> {
+            long start = System.nanoTime();
+            try (exchange) {
+                String method = exchange.getRequestMethod();
+                if (!method.equals("GET") && !method.equals("HEAD")) {
+                    exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                    sendError(exchange, 405, "Only GET and HEAD are supported");
+                    return;
+                }
+                handler.handle(exchange);
+            } catch (IOException e) {
+                // The client went away, nothing to answer
+                System.out.println("Could not answer " + exchange.getRequestURI() + ": " + e.getMessage());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                if (timer != null) timer.recordSince(start);
+            }
+        };
+    }
+
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return params;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(body);
+        } catch (IOException e) {
+            // Can't happen with an in-memory stream
+            throw new IllegalStateException(e);
+        }
+        return buffer.toByteArray();
+    }
+}
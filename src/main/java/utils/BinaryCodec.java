@@ -0,0 +1,17 @@
+package utils;
+
+import java.io.IOException;
+
+/**
+ * Converts one kind of object to and from a record in the app's binary format.
+ * Field numbers are the schema: once a number was used for a field it must never be reused for something else.
+ */
+public interface BinaryCodec<T> {
+    void write(BinaryWriter out, T value);
+
+    /**
+     * Reads the fields of one record. The reader is limited to that record,
+     * nextField() returns 0 once all of its fields have been read.
+     */
+    T read(BinaryReader in) throws IOException;
+}
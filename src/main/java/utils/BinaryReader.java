@@ -0,0 +1,142 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads records written by BinaryWriter.
+ *
+ * A codec loops over nextField() and reads the fields it knows with the matching read method;
+ * everything else is passed to skipField(). Nested records are read between enterRecord() and exitRecord().
+ * <pre>
+ * int field;
+ * while ((field = in.nextField()) != 0) {
+ *     switch (field) {
+ *         case 1 -> name = in.readString();
+ *         default -> in.skipField();
+ *     }
+ * }
+ * </pre>
+ */
+public final class BinaryReader {
+    private final ByteBuffer buffer;
+    private int wireType;
+    // Reused for decoding strings, so reading one doesn't allocate a temporary byte array
+    private byte[] scratch = new byte[64];
+
+    public BinaryReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Moves on to the next field of the current record.
+     * @return The field number, or 0 once the record has no more fields.
+     */
+    public int nextField() throws IOException {
+        if (!buffer.hasRemaining()) return 0;
+        long tag = readVarint();
+        wireType = (int) (tag & 0x7);
+        int field = (int) (tag >>> 3);
+        if (field == 0) throw new IOException("Corrupt record: field number 0");
+        return field;
+    }
+
+    public int readInt() throws IOException {
+        return (int) readLong();
+    }
+
+    public long readLong() throws IOException {
+        expect(BinaryWriter.VARINT);
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public double readDouble() throws IOException {
+        expect(BinaryWriter.FIXED64);
+        return buffer.getDouble();
+    }
+
+    public String readString() throws IOException {
+        expect(BinaryWriter.LENGTH_DELIMITED);
+        int length = readVarintLength();
+        if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+        buffer.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public byte[] readBytes() throws IOException {
+        expect(BinaryWriter.LENGTH_DELIMITED);
+        byte[] bytes = new byte[readVarintLength()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Limits reading to the nested record in the current field.
+     * @return A mark to hand to exitRecord() once the nested record has been read.
+     */
+    public int enterRecord() throws IOException {
+        expect(BinaryWriter.NESTED);
+        int length = readLength();
+        int outerLimit = buffer.limit();
+        buffer.limit(buffer.position() + length);
+        return outerLimit;
+    }
+
+    // Skips whatever is left of the nested record and continues with the outer one
+    public void exitRecord(int mark) {
+        buffer.position(buffer.limit());
+        buffer.limit(mark);
+    }
+
+    // Skips the value of a field the codec doesn't know (written by a newer version)
+    public void skipField() throws IOException {
+        switch (wireType) {
+            case BinaryWriter.VARINT -> readVarint();
+            case BinaryWriter.FIXED64 -> buffer.position(buffer.position() + 8);
+            case BinaryWriter.LENGTH_DELIMITED -> buffer.position(buffer.position() + readVarintLength());
+            case BinaryWriter.NESTED -> buffer.position(buffer.position() + readLength());
+            default -> throw new IOException("Corrupt record: unknown wire type " + wireType);
+        }
+    }
+
+    // Raw 4-byte int without a tag, used for file headers
+    int readRawInt() {
+        return buffer.getInt();
+    }
+
+    int readRawByte() {
+        return buffer.get() & 0xFF;
+    }
+
+    boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+
+    private int readLength() throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new IOException("Corrupt record: length " + length);
+        return length;
+    }
+
+    private int readVarintLength() throws IOException {
+        long length = readVarint();
+        if (length < 0 || length > buffer.remaining()) throw new IOException("Corrupt record: length " + length);
+        return (int) length;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Corrupt record: varint too long");
+    }
+
+    private void expect(int type) throws IOException {
+        if (wireType != type) throw new IOException("Corrupt record: wire type " + wireType + ", expected " + type);
+    }
+}
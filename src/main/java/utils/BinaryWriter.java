@@ -0,0 +1,115 @@
+package utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes records in the app's binary format into a growable direct buffer.
+ *
+ * A record is a sequence of tagged fields. Every field starts with a varint tag that holds
+ * the field number and how the value is encoded (its wire type):
+ * - VARINT: integers, zig-zag encoded so small negative numbers stay small,
+ * - FIXED64: doubles and other 8-byte values,
+ * - LENGTH_DELIMITED: strings and raw bytes, prefixed with a varint length,
+ * - NESTED: nested records, prefixed with a 4-byte length (filled in once the record is written).
+ * Readers skip fields they don't know and use defaults for fields that are missing,
+ * so fields can be added or dropped without breaking files written by other versions.
+ * Repeated fields are written as the same field number several times.
+ */
+public final class BinaryWriter {
+    public static final int VARINT = 0;
+    public static final int FIXED64 = 1;
+    public static final int LENGTH_DELIMITED = 2;
+    public static final int NESTED = 3;
+
+    private ByteBuffer buffer;
+
+    public BinaryWriter(int initialCapacity) {
+        this.buffer = ByteBuffer.allocateDirect(Math.max(64, initialCapacity));
+    }
+
+    public void writeInt(int field, int value) {
+        writeLong(field, value);
+    }
+
+    public void writeLong(int field, long value) {
+        writeTag(field, VARINT);
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    public void writeDouble(int field, double value) {
+        writeTag(field, FIXED64);
+        ensure(8);
+        buffer.putDouble(value);
+    }
+
+    // Null strings are simply not written, the reader sees a missing field and keeps its default (null)
+    public void writeString(int field, String value) {
+        if (value == null) return;
+        writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void writeBytes(int field, byte[] value) {
+        if (value == null) return;
+        writeTag(field, LENGTH_DELIMITED);
+        writeVarint(value.length);
+        ensure(value.length);
+        buffer.put(value);
+    }
+
+    /**
+     * Starts a nested record. Everything written until endRecord() belongs to it.
+     * @return A mark to hand to endRecord().
+     */
+    public int beginRecord(int field) {
+        writeTag(field, NESTED);
+        ensure(4);
+        int mark = buffer.position();
+        // The length isn't known yet, it is filled in by endRecord
+        buffer.putInt(0);
+        return mark;
+    }
+
+    public void endRecord(int mark) {
+        buffer.putInt(mark, buffer.position() - mark - 4);
+    }
+
+    /**
+     * Returns the written bytes, ready to be read or written to a channel.
+     */
+    public ByteBuffer flip() {
+        return buffer.duplicate().flip();
+    }
+
+    // Raw 4-byte int without a tag, used for file headers
+    void writeRawInt(int value) {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    void writeRawByte(int value) {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+
+    private void writeTag(int field, int wireType) {
+        writeVarint(((long) field << 3) | wireType);
+    }
+
+    private void writeVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() >= bytes) return;
+        ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
@@ -0,0 +1,115 @@
+package utils;
+
+import java.io.Serial;
+
+/**
+ * Stops sending requests to an upstream that keeps failing, so callers fail fast
+ * (and fall back to cached data) instead of waiting for one timeout after another.
+ *
+ * CLOSED: requests pass, consecutive failures are counted.
+ * OPEN: after too many consecutive failures, every request is rejected until the cool-down has passed.
+ * HALF_OPEN: after the cool-down, a single trial request is let through. If it succeeds the breaker
+ * closes again, if it fails the breaker opens for another cool-down.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Thrown (or used to complete a future exceptionally) when a request is rejected because the breaker is open.
+     */
+    public static class OpenException extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        public OpenException(String name) {
+            super("Circuit breaker for " + name + " is open, not sending the request");
+        }
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtMillis;
+    private boolean trialInFlight;
+    private long rejected;
+
+    /**
+     * @param name Shown in log messages, e.g. the host name.
+     * @param failureThreshold Consecutive failures after which the breaker opens.
+     * @param openMillis How long the breaker stays open before a trial request is allowed.
+     */
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Returns whether a request may be sent now. Every allowed request must be followed by
+     * exactly one call to onSuccess, onFailure or onAbandoned.
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAtMillis >= openMillis) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (!trialInFlight) {
+                    trialInFlight = true;
+                    return true;
+                }
+                rejected++;
+                return false;
+            default:
+                rejected++;
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            System.out.println("Circuit breaker for " + name + " closed again");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            System.out.println("Circuit breaker for " + name + " opened after " + consecutiveFailures + " failure(s)");
+            state = State.OPEN;
+            openedAtMillis = System.currentTimeMillis();
+            trialInFlight = false;
+        }
+    }
+
+    /**
+     * Called instead of onSuccess/onFailure when an allowed request was cancelled before it got an answer.
+     * Lets the next request be the trial if this one was it.
+     */
+    public synchronized void onAbandoned() {
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    // Number of requests rejected while the breaker was open
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    public OpenException openException() {
+        return new OpenException(name);
+    }
+}
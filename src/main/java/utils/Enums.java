@@ -7,19 +7,61 @@ package utils;
  * These are the only units the API will accept, so enum-ing them ensures "type safety" in a way
  */
 public class Enums {
+    // Forecasts are always fetched in the first unit of each enum (celsius, kmh, mm) and converted for display,
+    // so switching units never needs a new request. The symbols match what the API itself would return.
     public enum TemperatureUnit {
-        celsius,
-        fahrenheit
+        celsius("°C"),
+        fahrenheit("°F");
+
+        private final String symbol;
+
+        TemperatureUnit(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() { return symbol; }
+
+        public double fromCelsius(double celsius) {
+            return this == fahrenheit ? celsius * 9 / 5 + 32 : celsius;
+        }
     }
     public enum WindSpeedUnit {
-        kmh,
-        ms,
-        mph,
-        kn
+        kmh("km/h", 1),
+        ms("m/s", 1 / 3.6),
+        mph("mp/h", 1 / 1.609344),
+        kn("kn", 1 / 1.852);
+
+        private final String symbol;
+        private final double perKmh;
+
+        WindSpeedUnit(String symbol, double perKmh) {
+            this.symbol = symbol;
+            this.perKmh = perKmh;
+        }
+
+        public String getSymbol() { return symbol; }
+
+        public double fromKmh(double kmh) {
+            return kmh * perKmh;
+        }
     }
     public enum PrecipitationUnit {
-        mm,
-        inch
+        mm("mm", 1),
+        inch("inch", 1 / 25.4);
+
+        private final String symbol;
+        private final double perMm;
+
+        PrecipitationUnit(String symbol, double perMm) {
+            this.symbol = symbol;
+            this.perMm = perMm;
+        }
+
+        public String getSymbol() { return symbol; }
+
+        public double fromMm(double mm) {
+            return mm * perMm;
+        }
     }
     public enum ForecastInterval {
         hourly,
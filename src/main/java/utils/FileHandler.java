@@ -1,34 +1,137 @@
 package utils;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * A generic utility class for handling object serialization.
+ * A generic utility class for persisting lists of objects.
  * It provides static methods to read and write lists of objects to a file,
- * which is used by RecentSearches to persist the search history.
+ * which is used by RecentSearches to persist the search history and by ForecastSnapshotStore.
+ *
+ * Files use the app's own binary format (see BinaryWriter): a short header (magic number and format version)
+ * followed by one tagged record per item. How an item maps to a record is defined by a BinaryCodec,
+ * so classes can change without invalidating existing files, unlike Java serialization.
+ * Files are read and written in one go through a FileChannel and a direct buffer.
  */
 public class FileHandler {
+    private static final int MAGIC = 0x5742494E; // "WBIN"
+    private static final int FORMAT_VERSION = 1;
+    // Field number of the top-level records
+    private static final int ITEM = 1;
 
-    @SuppressWarnings("unchecked")
-    public static <T> List<T> readFromFile(String filename) {
-        File file = new File(filename);
-        if (!file.exists()) return new ArrayList<>();
+    /**
+     * Reads all items from a file written by writeToFile.
+     * @return The items, or an empty list if the file doesn't exist or can't be read.
+     */
+    public static <T> List<T> readFromFile(String filename, BinaryCodec<T> codec) {
+        Path path = Path.of(filename);
+        if (!Files.exists(path)) return new ArrayList<>();
 
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
-            return (List<T>) in.readObject();
-        } catch (IOException | ClassNotFoundException e) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading until the buffer is full or the file ends
+            }
+            buffer.flip();
+
+            BinaryReader in = new BinaryReader(buffer);
+            if (buffer.remaining() < 5 || in.readRawInt() != MAGIC || in.readRawByte() > FORMAT_VERSION) {
+                System.out.println("Ignoring " + filename + ", it has an unknown format.");
+                return new ArrayList<>();
+            }
+
+            List<T> items = new ArrayList<>();
+            int field;
+            while ((field = in.nextField()) != 0) {
+                if (field == ITEM) {
+                    int mark = in.enterRecord();
+                    items.add(codec.read(in));
+                    in.exitRecord(mark);
+                } else {
+                    in.skipField();
+                }
+            }
+            return items;
+        } catch (IOException | RuntimeException e) {
             e.printStackTrace();
             return new ArrayList<>();
         }
     }
 
-    public static <T> void writeToFile(String filename, List<T> items) {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filename))) {
-            out.writeObject(items);
+    /**
+     * Writes all items to the file, replacing its contents. The data is written to a temporary file
+     * first and then moved into place, so a crash mid-write never leaves a half-written file behind.
+     * Both the data and the rename are flushed to the disk before this returns.
+     * @return true if the file was written.
+     */
+    public static <T> boolean writeToFile(String filename, BinaryCodec<T> codec, List<T> items) {
+        BinaryWriter out = new BinaryWriter(64 + items.size() * 128);
+        out.writeRawInt(MAGIC);
+        out.writeRawByte(FORMAT_VERSION);
+        for (T item : items) {
+            int mark = out.beginRecord(ITEM);
+            codec.write(out, item);
+            out.endRecord(mark);
+        }
+
+        Path path = Path.of(filename);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = out.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            // Otherwise the rename can reach the disk before the data, and a crash leaves an empty file in place
+            channel.force(true);
         } catch (IOException e) {
             e.printStackTrace();
+            return false;
+        }
+
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        syncDirectory(path.toAbsolutePath().getParent());
+        return true;
+    }
+
+    // Flushes a directory's entries, which makes a rename in it durable. Not every platform can open
+    // a directory (Windows can't), and there a failure is ignored: the rename is then as durable as it gets.
+    private static void syncDirectory(Path directory) {
+        if (directory == null) return;
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // not supported on this platform
+        }
+    }
+
+    /**
+     * Reads a list written with Java serialization by older versions of the app.
+     * Only used to migrate those files to the binary format.
+     * @return The list, an empty list if the file doesn't exist, or null if it exists but can't be read.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> readSerializedFile(String filename) {
+        File file = new File(filename);
+        if (!file.exists()) return new ArrayList<>();
+
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
+            return (List<T>) in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+            return null;
         }
     }
 }
@@ -0,0 +1,195 @@
+package utils;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the last good forecast response for a handful of locations on disk,
+ * so the app can show something immediately on startup before the network answers.
+ *
+ * Each entry is the raw JSON response (gzip-compressed, weather JSON shrinks a lot)
+ * together with the time it was fetched. The store is capped both by the number of entries
+ * and by the total compressed size; the oldest entries are evicted first.
+ * The file is written with FileHandler, in the same binary format as the recent searches.
+ *
+ * put() is called on the HttpClient's worker threads for every parsed forecast, so it only queues the response.
+ * A background thread compresses and writes everything queued within a short window in one go, so a batch of
+ * forecasts costs one file write and parsing never waits on the disk. Call flush() before exiting.
+ */
+public class ForecastSnapshotStore {
+
+    /**
+     * A stored forecast response and the time (epoch millis) it was fetched from the API.
+     */
+    public record Snapshot(long fetchedAtMillis, byte[] json) {}
+
+    // The stored entries are kept compressed in memory as well, ordered from oldest to newest fetch.
+    private record StoredEntry(String key, long fetchedAtMillis, byte[] compressed) {}
+
+    // How long the writer waits after the first queued response, so the rest of a batch is written together
+    private static final long WRITE_DELAY_MILLIS = 2000;
+
+    private static final BinaryCodec<StoredEntry> CODEC = new BinaryCodec<>() {
+        private static final int KEY = 1;
+        private static final int FETCHED_AT = 2;
+        private static final int COMPRESSED_JSON = 3;
+
+        @Override
+        public void write(BinaryWriter out, StoredEntry entry) {
+            out.writeString(KEY, entry.key());
+            out.writeLong(FETCHED_AT, entry.fetchedAtMillis());
+            out.writeBytes(COMPRESSED_JSON, entry.compressed());
+        }
+
+        @Override
+        public StoredEntry read(BinaryReader in) throws IOException {
+            String key = null;
+            long fetchedAt = 0;
+            byte[] compressed = null;
+            int field;
+            while ((field = in.nextField()) != 0) {
+                switch (field) {
+                    case KEY -> key = in.readString();
+                    case FETCHED_AT -> fetchedAt = in.readLong();
+                    case COMPRESSED_JSON -> compressed = in.readBytes();
+                    default -> in.skipField();
+                }
+            }
+            if (key == null || compressed == null) throw new IOException("Corrupt forecast snapshot");
+            return new StoredEntry(key, fetchedAt, compressed);
+        }
+    };
+
+    private final String filename;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, StoredEntry> entries = new LinkedHashMap<>();
+    // Responses put() since the last write, uncompressed, oldest first
+    private final LinkedHashMap<String, Snapshot> pending = new LinkedHashMap<>();
+    private boolean writeScheduled;
+    // Held while writing the file, so two flushes can't write it at the same time. Never held by put() or get().
+    private final Object writeLock = new Object();
+
+    /**
+     * Loads the existing snapshot file, if there is one.
+     * @param filename The file the snapshots are kept in.
+     * @param maxEntries The maximum amount of locations kept.
+     * @param maxBytes The maximum total size of the compressed responses.
+     */
+    public ForecastSnapshotStore(String filename, int maxEntries, long maxBytes) {
+        this.filename = filename;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        load();
+    }
+
+    /**
+     * Returns the stored response for the key, or null if there is none.
+     */
+    public synchronized Snapshot get(String key) {
+        Snapshot queued = pending.get(key);
+        if (queued != null) return queued;
+        StoredEntry entry = entries.get(key);
+        if (entry == null) return null;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(entry.compressed()))) {
+            return new Snapshot(entry.fetchedAtMillis(), in.readAllBytes());
+        } catch (IOException e) {
+            System.out.println("Could not read forecast snapshot for " + key + ": " + e.getMessage());
+            entries.remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Queues a freshly fetched response. It is written to disk by a background thread shortly after,
+     * together with any other responses queued in the meantime.
+     */
+    public void put(String key, byte[] json) {
+        synchronized (this) {
+            // Re-inserting moves the key to the end, so the map stays ordered by fetch time
+            pending.remove(key);
+            pending.put(key, new Snapshot(System.currentTimeMillis(), json));
+            if (writeScheduled) return;
+            writeScheduled = true;
+        }
+        Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(WRITE_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                // write right away
+            }
+            flush();
+        }, "forecast-snapshot-writer");
+        // A pending write must not keep the app alive, the app calls flush() on a normal exit
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Compresses the queued responses, evicts old entries if the store is over its limits
+     * and writes the store to disk. Does file I/O, so it must not run on the FX thread.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            Map<String, Snapshot> batch;
+            synchronized (this) {
+                writeScheduled = false;
+                if (pending.isEmpty()) return;
+                batch = new LinkedHashMap<>(pending);
+                pending.clear();
+            }
+
+            List<StoredEntry> compressed = new ArrayList<>(batch.size());
+            for (Map.Entry<String, Snapshot> queued : batch.entrySet()) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(queued.getValue().json().length / 4);
+                try (OutputStream out = new GZIPOutputStream(buffer)) {
+                    out.write(queued.getValue().json());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    continue;
+                }
+                compressed.add(new StoredEntry(queued.getKey(), queued.getValue().fetchedAtMillis(), buffer.toByteArray()));
+            }
+
+            List<StoredEntry> toSave;
+            synchronized (this) {
+                for (StoredEntry entry : compressed) {
+                    entries.remove(entry.key());
+                    entries.put(entry.key(), entry);
+                }
+                evict();
+                toSave = new ArrayList<>(entries.values());
+            }
+            // FileHandler writes to a temporary file first and then swaps it in, so a crash mid-write can't corrupt the store.
+            FileHandler.writeToFile(filename, CODEC, toSave);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Drops the oldest entries until both the entry and the size limit are respected.
+    private void evict() {
+        long totalBytes = 0;
+        for (StoredEntry entry : entries.values()) {
+            totalBytes += entry.compressed().length;
+        }
+        var iterator = entries.values().iterator();
+        while (iterator.hasNext() && (entries.size() > maxEntries || totalBytes > maxBytes)) {
+            totalBytes -= iterator.next().compressed().length;
+            iterator.remove();
+        }
+    }
+
+    private void load() {
+        for (StoredEntry entry : FileHandler.readFromFile(filename, CODEC)) {
+            entries.put(entry.key(), entry);
+        }
+    }
+}
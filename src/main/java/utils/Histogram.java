@@ -0,0 +1,128 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram that is cheap enough to record on every call.
+ *
+ * Values (nanoseconds) are counted in logarithmic buckets: every power of two is split into
+ * 16 equal sub-buckets, so any recorded value is known to within about 6%, from 1 ns up to hours,
+ * in a fixed array of ~1000 counters. Recording is a couple of shifts and an atomic increment,
+ * no locks and no allocation, so it can be called from any thread (including the FX thread).
+ *
+ * By default nothing is ever forgotten: the percentiles cover everything since the last reset.
+ * A windowed histogram only counts the most recent values (see Histogram(int)), so its percentiles
+ * follow an upstream that gets faster or slower.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    /**
+     * The state of a histogram at one point in time. All values are in nanoseconds.
+     */
+    public record Snapshot(long count, long p50, long p95, long p99, long max, long mean) {}
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    // The most recent values plus one (0 = empty slot) of a windowed histogram, null if it keeps everything
+    private final AtomicLongArray window;
+    private final AtomicLong next = new AtomicLong();
+
+    public Histogram() {
+        this.window = null;
+    }
+
+    /**
+     * A histogram over only the given number of most recent values. Older values drop out of
+     * the count, mean and percentiles as new ones come in; the maximum is still the all-time one.
+     */
+    public Histogram(int window) {
+        this.window = new AtomicLongArray(window);
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+        if (window != null) {
+            int slot = (int) (next.getAndIncrement() % window.length());
+            long evicted = window.getAndSet(slot, nanos + 1) - 1;
+            if (evicted >= 0) {
+                counts.decrementAndGet(bucketOf(evicted));
+                count.decrementAndGet();
+                sum.addAndGet(-evicted);
+            }
+        }
+    }
+
+    // Records the time elapsed since start (a System.nanoTime() value)
+    public void recordSince(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the given percentile (0.0 - 1.0) in nanoseconds, or 0 if nothing was recorded.
+     * The result is the upper end of the bucket the percentile falls into, but never more than the maximum.
+     */
+    public long percentile(double p) {
+        long total = count.get();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public Snapshot snapshot() {
+        long total = count.get();
+        return new Snapshot(total, percentile(0.50), percentile(0.95), percentile(0.99),
+                max.get(), total == 0 ? 0 : sum.get() / total);
+    }
+
+    // Not atomic with respect to concurrent record() calls, which is fine for a diagnostics reset
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+        if (window != null) {
+            for (int i = 0; i < window.length(); i++) {
+                window.set(i, 0);
+            }
+        }
+    }
+
+    // Values below 16 get a bucket each, above that the top 5 bits (leading 1 + 4 sub-bucket bits) pick the bucket
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,248 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe persistence for a small collection that changes one item at a time (e.g. the recent searches).
+ *
+ * The state lives in two files:
+ * - the base file, the whole collection as of the last compaction (written by FileHandler, atomically),
+ * - the journal, every item added since then, appended one record at a time.
+ * Each journal record is [length][CRC32][payload]. If the app dies mid-write, the torn record at the end
+ * fails its checksum and is cut off on the next load, so everything before it survives.
+ *
+ * Writes are write-behind: append() only queues the item and returns immediately. A background thread
+ * collects whatever was queued within a short window and writes it with a single write and a single
+ * fsync (group commit). Once the journal holds enough records, it is compacted: the owner's current
+ * state is written as the new base file and the journal is emptied.
+ */
+public class Journal<T> {
+    private static final int MAGIC = 0x574A524E; // "WJRN"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 5;
+    // Length + checksum in front of every record
+    private static final int RECORD_HEADER_BYTES = 8;
+    // How long the writer waits for more items after the first one, so a burst is committed together
+    private static final long GROUP_COMMIT_WINDOW_MILLIS = 20;
+
+    /**
+     * What load() found on disk: the compacted base and the items appended after it, oldest first.
+     */
+    public record Contents<T>(List<T> base, List<T> appended) {}
+
+    private final String baseFilename;
+    private final Path journalFile;
+    private final BinaryCodec<T> codec;
+    private final Supplier<List<T>> currentState;
+    private final int compactThreshold;
+
+    private final BlockingQueue<T> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private FileChannel channel;
+    private int journalRecords;
+
+    /**
+     * @param baseFilename The file holding the compacted state.
+     * @param journalFilename The file the added items are appended to.
+     * @param codec Converts the items to and from the binary format.
+     * @param currentState Returns the owner's complete current state. Called on the writer thread when compacting.
+     * @param compactThreshold Journal records after which the journal is compacted into the base file.
+     */
+    public Journal(String baseFilename, String journalFilename, BinaryCodec<T> codec,
+                   Supplier<List<T>> currentState, int compactThreshold) {
+        this.baseFilename = baseFilename;
+        this.journalFile = Path.of(journalFilename);
+        this.codec = codec;
+        this.currentState = currentState;
+        this.compactThreshold = compactThreshold;
+        this.writer = new Thread(this::writeLoop, "journal-writer-" + journalFile.getFileName());
+        // A pending write must not keep the app alive, close() flushes it on a normal exit
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Reads the base file and replays the journal. A damaged tail of the journal is truncated.
+     * Starts the background writer, so this must be called once, before the first append().
+     */
+    public Contents<T> load() {
+        List<T> base = FileHandler.readFromFile(baseFilename, codec);
+        List<T> appended = new ArrayList<>();
+        try {
+            channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long validEnd = replay(appended);
+            if (validEnd < channel.size()) {
+                System.out.println("Discarding " + (channel.size() - validEnd) + " damaged bytes at the end of " + journalFile);
+                channel.truncate(validEnd);
+                channel.force(false);
+            }
+            channel.position(validEnd);
+            journalRecords = appended.size();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        writer.start();
+        return new Contents<>(base, appended);
+    }
+
+    /**
+     * Queues an item to be appended. Returns right away, the disk write happens on the writer thread.
+     */
+    public void append(T item) {
+        queue.add(item);
+    }
+
+    /**
+     * Writes everything that is still queued and stops the writer thread. Called when the app exits.
+     */
+    public void close() {
+        running = false;
+        try {
+            writer.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Reads all intact records. Returns the position right after the last intact one.
+    private long replay(List<T> appended) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            writeHeader();
+            return HEADER_BYTES;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // keep reading until the whole file is in the buffer
+        }
+        buffer.flip();
+        if (size < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+            System.out.println("Ignoring " + journalFile + ", it has an unknown format.");
+            channel.truncate(0);
+            writeHeader();
+            return HEADER_BYTES;
+        }
+
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                return start;
+            }
+            ByteBuffer payload = buffer.slice(buffer.position(), length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return start;
+            }
+            try {
+                appended.add(codec.read(new BinaryReader(payload)));
+            } catch (IOException | RuntimeException e) {
+                return start;
+            }
+            buffer.position(buffer.position() + length);
+        }
+        return buffer.position();
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).put((byte) VERSION).flip();
+        channel.write(header, 0);
+        channel.force(false);
+    }
+
+    private void writeLoop() {
+        List<T> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                T first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                // Give a burst of changes a moment to arrive, then commit them together
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GROUP_COMMIT_WINDOW_MILLIS);
+                long wait;
+                while (running && (wait = deadline - System.nanoTime()) > 0) {
+                    T next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                queue.drainTo(batch);
+            } catch (InterruptedException e) {
+                queue.drainTo(batch);
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Appends the batch with a single write and fsync, then compacts if the journal got long
+    private void commit(List<T> batch) {
+        if (channel == null) return;
+        try {
+            CRC32 crc = new CRC32();
+            List<ByteBuffer> records = new ArrayList<>(batch.size());
+            for (T item : batch) {
+                BinaryWriter record = new BinaryWriter(128);
+                codec.write(record, item);
+                records.add(record.flip());
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect(records.stream().mapToInt(r -> r.remaining() + RECORD_HEADER_BYTES).sum());
+            for (ByteBuffer record : records) {
+                crc.reset();
+                crc.update(record.duplicate());
+                buffer.putInt(record.remaining()).putInt((int) crc.getValue()).put(record);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            journalRecords += batch.size();
+
+            if (journalRecords >= compactThreshold) {
+                compact();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the current state as the new base file, then empties the journal.
+     * If the app dies in between, the journal is replayed on top of a base that already contains it,
+     * which gives the same state again, as long as the owner applies items idempotently.
+     */
+    private void compact() throws IOException {
+        // writeToFile only returns true once the base file and its rename are on the disk. Until then the journal
+        // is the only durable copy of its records, so it is kept if the write failed.
+        if (!FileHandler.writeToFile(baseFilename, codec, currentState.get())) return;
+        channel.truncate(HEADER_BYTES);
+        channel.position(HEADER_BYTES);
+        channel.force(false);
+        journalRecords = 0;
+    }
+}
@@ -0,0 +1,158 @@
+package utils;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small, thread-safe, size-bounded cache that evicts the least recently used entry first.
+ * Every entry remembers when it expires, but expired entries are still handed out by get(),
+ * so callers can choose between serving them (stale-while-revalidate) or treating them as a miss.
+ * Hit, miss and eviction counters are kept so the cache can be sized from real usage.
+ */
+public class LruCache<K, V> {
+
+    /**
+     * A cached value together with the time it was stored and the time it stops being fresh.
+     */
+    public record Entry<V>(V value, long storedAtMillis, long expiresAtMillis) {
+        public boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAtMillis;
+        }
+    }
+
+    private final int maxEntries;
+    private final Duration defaultTtl;
+    private final Map<K, Entry<V>> entries;
+    // The same entries in a plain map, for peek(). Any lookup in the access-ordered map counts as a use.
+    private final Map<K, Entry<V>> unordered = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries The maximum amount of entries kept before the least recently used one is evicted.
+     * @param defaultTtl How long an entry stays fresh when no TTL is given to put().
+     */
+    public LruCache(int maxEntries, Duration defaultTtl) {
+        this.maxEntries = maxEntries;
+        this.defaultTtl = defaultTtl;
+        // accessOrder = true turns the LinkedHashMap into an LRU list, get() moves an entry to the end
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LruCache.this.maxEntries) {
+                    unordered.remove(eldest.getKey());
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the entry for the key, even if it is expired, or null if there is none.
+     */
+    public synchronized Entry<V> get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+        } else if (entry.isExpired()) {
+            staleHits.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the value for the key only if it is still fresh. Expired entries count as a miss.
+     */
+    public synchronized V getFresh(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || entry.isExpired()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value();
+    }
+
+    /**
+     * Returns the entry for the key without counting it as a hit or miss and without making it recently used.
+     * Meant for housekeeping (e.g. checking when an entry expires), not for serving values.
+     */
+    public synchronized Entry<V> peek(K key) {
+        return unordered.get(key);
+    }
+
+    public void put(K key, V value) {
+        put(key, value, defaultTtl);
+    }
+
+    public synchronized void put(K key, V value, Duration ttl) {
+        long now = System.currentTimeMillis();
+        Entry<V> entry = new Entry<>(value, now, now + ttl.toMillis());
+        unordered.put(key, entry);
+        entries.put(key, entry);
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+        unordered.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        unordered.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public Duration getDefaultTtl() {
+        return defaultTtl;
+    }
+
+    // Statistics, used to size the cache
+
+    public long getHits() { return hits.get(); }
+    public long getStaleHits() { return staleHits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+
+    // Share of lookups that were answered from the cache (fresh or stale)
+    public double getHitRatio() {
+        long served = hits.get() + staleHits.get();
+        long total = served + misses.get();
+        return total == 0 ? 0.0 : (double) served / total;
+    }
+
+    // Share of lookups that found a fresh entry. For callers that treat an expired entry as a miss and go to the network.
+    public double getFreshHitRatio() {
+        long total = hits.get() + staleHits.get() + misses.get();
+        return total == 0 ? 0.0 : (double) hits.get() / total;
+    }
+
+    @Override
+    public String toString() {
+        return "LruCache{" +
+                "size=" + size() +
+                ", maxEntries=" + maxEntries +
+                ", hits=" + hits +
+                ", staleHits=" + staleHits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
@@ -0,0 +1,27 @@
+package utils;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the MetricsRegistry, registered as "p2weather:type=Metrics".
+ * Open it with jconsole or VisualVM while the app is running.
+ */
+public interface MetricsMXBean {
+
+    // p50/p95/p99/max/mean of every timer in microseconds, plus its count, keyed "name.p95", "name.count" etc.
+    Map<String, Long> getTimersMicros();
+
+    // Cache hit ratios and counters (retries, hedges, coalesced requests...)
+    Map<String, Double> getGauges();
+
+    // The same table dump() writes to a file
+    String dump();
+
+    /**
+     * Writes the current metrics to a file.
+     * @return The path of the written file, or an error message.
+     */
+    String dumpToFile(String filename);
+
+    void reset();
+}
@@ -0,0 +1,134 @@
+package utils;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The app's in-process metrics: latency histograms for the stages of a location switch
+ * (geocode, forecast HTTP, JSON parse, view population) and gauges such as cache hit ratios.
+ *
+ * There is one registry per process (get()), so any class can time itself without passing it around:
+ * <pre>
+ * long start = System.nanoTime();
+ * ...
+ * MetricsRegistry.get().timer("forecast.parse").recordSince(start);
+ * </pre>
+ * The metrics can be read through JMX (see MetricsMXBean) or written to a text file with dumpToFile.
+ */
+public final class MetricsRegistry implements MetricsMXBean {
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+    private static final String OBJECT_NAME = "p2weather:type=Metrics";
+
+    private final Map<String, Histogram> timers = new ConcurrentHashMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {}
+
+    public static MetricsRegistry get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the timer with the given name, creating it on first use.
+     * Names are dotted by stage, e.g. "forecast.http" or "view.hourly.populate".
+     */
+    public Histogram timer(String name) {
+        return timers.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * Registers a value that is read whenever the metrics are shown, e.g. a cache's hit ratio.
+     * Registering the same name again replaces the previous gauge.
+     */
+    public void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Makes the registry visible to jconsole / VisualVM. Safe to call more than once.
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Already registered
+        } catch (JMException e) {
+            System.out.println("Could not register the metrics MBean: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Long> getTimersMicros() {
+        Map<String, Long> values = new TreeMap<>();
+        new TreeMap<>(timers).forEach((name, timer) -> {
+            Histogram.Snapshot s = timer.snapshot();
+            values.put(name + ".count", s.count());
+            values.put(name + ".p50", s.p50() / 1000);
+            values.put(name + ".p95", s.p95() / 1000);
+            values.put(name + ".p99", s.p99() / 1000);
+            values.put(name + ".max", s.max() / 1000);
+            values.put(name + ".mean", s.mean() / 1000);
+        });
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getGauges() {
+        Map<String, Double> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsDouble()));
+        return values;
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Metrics at ").append(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)).append('\n');
+        sb.append(String.format(Locale.ROOT, "%-28s %8s %10s %10s %10s %10s %10s%n",
+                "timer (ms)", "count", "p50", "p95", "p99", "max", "mean"));
+        new TreeMap<>(timers).forEach((name, timer) -> {
+            Histogram.Snapshot s = timer.snapshot();
+            sb.append(String.format(Locale.ROOT, "%-28s %8d %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+                    name, s.count(), millis(s.p50()), millis(s.p95()), millis(s.p99()), millis(s.max()), millis(s.mean())));
+        });
+        sb.append('\n').append(String.format(Locale.ROOT, "%-28s %10s%n", "gauge", "value"));
+        getGauges().forEach((name, value) ->
+                sb.append(String.format(Locale.ROOT, "%-28s %10.3f%n", name, value)));
+        return sb.toString();
+    }
+
+    @Override
+    public String dumpToFile(String filename) {
+        Path path = Path.of(filename).toAbsolutePath();
+        try {
+            Files.writeString(path, dump(), StandardCharsets.UTF_8);
+            System.out.println("Metrics written to " + path);
+            return path.toString();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return "Could not write " + path + ": " + e.getMessage();
+        }
+    }
+
+    // Clears the timers. Gauges read live values and are left as they are.
+    @Override
+    public void reset() {
+        timers.values().forEach(Histogram::reset);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,120 @@
+package utils;
+
+import models.Location;
+import models.SearchEntry;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary codecs of the model classes that are persisted (see FileHandler).
+ * Field numbers must stay stable: add new fields with new numbers, and never reuse the number of a removed field.
+ */
+public final class ModelCodecs {
+
+    private ModelCodecs() {}
+
+    public static final BinaryCodec<Location> LOCATION = new BinaryCodec<>() {
+        private static final int ID = 1;
+        private static final int NAME = 2;
+        private static final int LATITUDE = 3;
+        private static final int LONGITUDE = 4;
+        private static final int ELEVATION = 5;
+        private static final int ADMIN1 = 6;
+        private static final int COUNTRY = 7;
+        private static final int COUNTRY_CODE = 8;
+        private static final int COUNTRY_ID = 9;
+        private static final int POSTCODE = 10; // repeated
+        private static final int POPULATION = 11;
+
+        @Override
+        public void write(BinaryWriter out, Location location) {
+            out.writeInt(ID, location.getId());
+            out.writeString(NAME, location.getName());
+            out.writeDouble(LATITUDE, location.getLatitude());
+            out.writeDouble(LONGITUDE, location.getLongitude());
+            out.writeDouble(ELEVATION, location.getElevation());
+            out.writeString(ADMIN1, location.getAdmin1());
+            out.writeString(COUNTRY, location.getCountry());
+            out.writeString(COUNTRY_CODE, location.getCountryCode());
+            out.writeInt(COUNTRY_ID, location.getCountryId());
+            out.writeLong(POPULATION, location.getPopulation());
+            if (location.getPostcodes() != null) {
+                for (String postcode : location.getPostcodes()) {
+                    out.writeString(POSTCODE, postcode);
+                }
+            }
+        }
+
+        @Override
+        public Location read(BinaryReader in) throws IOException {
+            Location location = new Location();
+            List<String> postcodes = null;
+            int field;
+            while ((field = in.nextField()) != 0) {
+                switch (field) {
+                    case ID -> location.setId(in.readInt());
+                    case NAME -> location.setName(in.readString());
+                    case LATITUDE -> location.setLatitude(in.readDouble());
+                    case LONGITUDE -> location.setLongitude(in.readDouble());
+                    case ELEVATION -> location.setElevation(in.readDouble());
+                    case ADMIN1 -> location.setAdmin1(in.readString());
+                    case COUNTRY -> location.setCountry(in.readString());
+                    case COUNTRY_CODE -> location.setCountryCode(in.readString());
+                    case COUNTRY_ID -> location.setCountryId(in.readInt());
+                    case POPULATION -> location.setPopulation(in.readLong());
+                    case POSTCODE -> {
+                        if (postcodes == null) postcodes = new ArrayList<>();
+                        postcodes.add(in.readString());
+                    }
+                    default -> in.skipField();
+                }
+            }
+            if (postcodes != null) {
+                location.setPostcodes(postcodes.toArray(new String[0]));
+            }
+            return location;
+        }
+    };
+
+    public static final BinaryCodec<SearchEntry> SEARCH_ENTRY = new BinaryCodec<>() {
+        private static final int LOCATION_FIELD = 1;
+        // The timestamp is a LocalDateTime, stored as its fields counted from 1970-01-01T00:00 (no zone involved)
+        private static final int TIMESTAMP_SECONDS = 2;
+        private static final int TIMESTAMP_NANOS = 3;
+
+        @Override
+        public void write(BinaryWriter out, SearchEntry entry) {
+            int mark = out.beginRecord(LOCATION_FIELD);
+            LOCATION.write(out, entry.getLocation());
+            out.endRecord(mark);
+            out.writeLong(TIMESTAMP_SECONDS, entry.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(TIMESTAMP_NANOS, entry.getTimestamp().getNano());
+        }
+
+        @Override
+        public SearchEntry read(BinaryReader in) throws IOException {
+            Location location = null;
+            long seconds = 0;
+            int nanos = 0;
+            int field;
+            while ((field = in.nextField()) != 0) {
+                switch (field) {
+                    case LOCATION_FIELD -> {
+                        int mark = in.enterRecord();
+                        location = LOCATION.read(in);
+                        in.exitRecord(mark);
+                    }
+                    case TIMESTAMP_SECONDS -> seconds = in.readLong();
+                    case TIMESTAMP_NANOS -> nanos = in.readInt();
+                    default -> in.skipField();
+                }
+            }
+            if (location == null) throw new IOException("Corrupt search entry: no location");
+            return new SearchEntry(location, LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+        }
+    };
+}
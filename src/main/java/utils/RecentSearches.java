@@ -3,56 +3,117 @@ package utils;
 import models.Location;
 import models.SearchEntry;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * A utility class that manages the list of recent user searches.
- * It handles loading the list from a file (deserialization) on startup
- * and saving the updated list back to the file (serialization) after each new search.
+ * It handles loading the list from disk once on startup, and persisting every new search.
+ *
+ * New searches are appended to a journal by a background thread (see Journal), so selecting a location
+ * never waits for the disk. Every so often the journal is compacted into recent_searches.bin.
+ * The instance is created once by MainApp and shared with everything that needs the recent searches.
  */
 public class RecentSearches {
-    private static final String RECENT_SEARCHES_FILE = "recent_searches.ser";
-    private List<SearchEntry> recentEntries;
+    private static final String RECENT_SEARCHES_FILE = "recent_searches.bin";
+    private static final String JOURNAL_FILE = "recent_searches.journal";
+    // Written with Java serialization by older versions, converted once on startup
+    private static final String LEGACY_RECENT_SEARCHES_FILE = "recent_searches.ser";
+    private static final int MAX_ENTRIES = 10;
+    // Journal records after which the journal is folded into the base file
+    private static final int COMPACT_THRESHOLD = 50;
+
+    private final List<SearchEntry> recentEntries = new ArrayList<>();
+    private final Journal<SearchEntry> journal;
 
     /**
-     * On instantiation, this class immediately tries to load the existing search list
-     * from the .ser file. If no file is found (e.g., first launch),
-     * it initializes an empty list.
+     * On instantiation, this class immediately loads the existing search list:
+     * the compacted list, with the searches from the journal replayed on top.
+     * If no file is found (e.g., first launch), the list is empty.
      */
     public RecentSearches() {
-        recentEntries = FileHandler.readFromFile(RECENT_SEARCHES_FILE);
-        if (recentEntries == null) {
-            recentEntries = new ArrayList<>();
+        migrateLegacyFile();
+        journal = new Journal<>(RECENT_SEARCHES_FILE, JOURNAL_FILE, ModelCodecs.SEARCH_ENTRY,
+                this::getRecentEntriesCopy, COMPACT_THRESHOLD);
+
+        Journal.Contents<SearchEntry> contents = journal.load();
+        recentEntries.addAll(contents.base());
+        // Replaying is idempotent: re-adding an entry just moves it to the front again
+        for (SearchEntry entry : contents.appended()) {
+            add(entry);
         }
     }
 
-    // Adds a new location to the recent searches list, saves the list and manages its size
-    public void addLocation(Location location) {
+    /**
+     * Converts the recent searches saved with Java serialization to the binary format.
+     * The old file is renamed afterwards (not deleted), so this runs only once and nothing is lost if it goes wrong.
+     */
+    private static void migrateLegacyFile() {
+        File legacy = new File(LEGACY_RECENT_SEARCHES_FILE);
+        if (!legacy.exists() || new File(RECENT_SEARCHES_FILE).exists()) return;
+
+        List<SearchEntry> entries = FileHandler.readSerializedFile(LEGACY_RECENT_SEARCHES_FILE);
+        if (entries == null) {
+            // Keep the old file as it is, an empty binary file written now would stop the migration for good
+            System.out.println("Could not read " + LEGACY_RECENT_SEARCHES_FILE + ", it was left unmigrated");
+            return;
+        }
+        if (FileHandler.writeToFile(RECENT_SEARCHES_FILE, ModelCodecs.SEARCH_ENTRY, entries)
+                && legacy.renameTo(new File(LEGACY_RECENT_SEARCHES_FILE + ".migrated"))) {
+            System.out.println("Migrated " + entries.size() + " recent searches to " + RECENT_SEARCHES_FILE);
+        }
+    }
+
+    // Adds a new location to the recent searches list and manages its size. The disk write happens in the background.
+    public synchronized void addLocation(Location location) {
+        SearchEntry entry = new SearchEntry(location);
+        add(entry);
+        journal.append(entry);
+        System.out.println("Recent searches updated: " + recentEntries);
+    }
+
+    private void add(SearchEntry added) {
         // Removes duplicate locations
-        recentEntries.removeIf(entry -> entry.getLocation().toString().equals(location.toString()));
+        recentEntries.removeIf(entry -> entry.getLocation().toString().equals(added.getLocation().toString()));
 
         // The newly added location goes to index 0
-        recentEntries.addFirst(new SearchEntry(location));
+        recentEntries.addFirst(added);
 
-        // Save only up to 10 recent locations
-        if (recentEntries.size() > 10) {
-            recentEntries = recentEntries.subList(0, 10);
+        // Keep only up to 10 recent locations
+        while (recentEntries.size() > MAX_ENTRIES) {
+            recentEntries.removeLast();
         }
+    }
 
-        FileHandler.writeToFile(RECENT_SEARCHES_FILE, recentEntries);
-        System.out.println("Recent searches updated: " + recentEntries);
+    /**
+     * Writes the searches that are still queued and stops the background writer. Called when the app exits.
+     */
+    public void close() {
+        journal.close();
     }
 
-    // Returns the list of recent entries
+    // Returns the list of recent entries. Only to be used on the FX thread, which is the only thread changing it.
     public List<SearchEntry> getRecentEntries() {
         return recentEntries;
     }
 
+    private synchronized List<SearchEntry> getRecentEntriesCopy() {
+        return new ArrayList<>(recentEntries);
+    }
+
+    // Returns a copy of the recent locations, newest first. Safe to call from background threads.
+    public synchronized List<Location> getRecentLocations() {
+        List<Location> locations = new ArrayList<>(recentEntries.size());
+        for (SearchEntry entry : recentEntries) {
+            locations.add(entry.getLocation());
+        }
+        return locations;
+    }
+
     // Get the latest viewed location. Used by MainApp to load a location on startup.
-    public static Location getLatestLocation(){
-        List<SearchEntry> recentEntries = FileHandler.readFromFile(RECENT_SEARCHES_FILE);
-        if (recentEntries == null || recentEntries.isEmpty()) return null;
+    public synchronized Location getLatestLocation(){
+        if (recentEntries.isEmpty()) return null;
         return recentEntries.getFirst().getLocation();
     }
 }
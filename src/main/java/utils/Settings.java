@@ -48,6 +48,11 @@ public class Settings {
             properties.setProperty("precipitation_unit", "mm"); // inches
             properties.setProperty("forecast_days", "7"); //up to 16
             properties.setProperty("forecast_interval", "hourly");
+            properties.setProperty("forecast_cache_size", "32");
+            properties.setProperty("forecast_cache_ttl_minutes", "15");
+            properties.setProperty("forecast_snapshot_size", "10");
+            properties.setProperty("http_version", "HTTP_2"); // HTTP_1_1
+            properties.setProperty("http_connect_timeout_seconds", "10");
             properties.store(output, null);
             System.out.println("Configuration saved.");
 
@@ -60,6 +65,21 @@ public class Settings {
         return properties;
     }
 
+    /**
+     * Reads a numeric setting. Settings files written by older versions of the app
+     * may not contain newer keys, so a missing or malformed value falls back to the default.
+     */
+    public int getIntProperty(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid value for setting " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
     /**
      * Updates a single setting in memory and immediately saves the
      * entire properties object back to the file.
@@ -0,0 +1,54 @@
+package utils;
+
+import utils.Enums.PrecipitationUnit;
+import utils.Enums.TemperatureUnit;
+import utils.Enums.WindSpeedUnit;
+
+/**
+ * Converts forecast values from the canonical units they are fetched in (°C, km/h, mm)
+ * to the units the user picked, and formats them for display.
+ * Views re-render with a new converter when the units change, the forecast itself stays untouched.
+ */
+public record UnitConverter(TemperatureUnit temperature, WindSpeedUnit windSpeed, PrecipitationUnit precipitation) {
+
+    // The units forecasts are fetched and cached in
+    public static final UnitConverter CANONICAL =
+            new UnitConverter(TemperatureUnit.celsius, WindSpeedUnit.kmh, PrecipitationUnit.mm);
+
+    /**
+     * Creates the converter for the units in the user's settings. Missing or unknown values fall back to the canonical unit.
+     */
+    public static UnitConverter fromSettings(Settings settings) {
+        return new UnitConverter(
+                parse(TemperatureUnit.class, settings.getProperties().getProperty("temperature_unit"), TemperatureUnit.celsius),
+                parse(WindSpeedUnit.class, settings.getProperties().getProperty("wind_speed_unit"), WindSpeedUnit.kmh),
+                parse(PrecipitationUnit.class, settings.getProperties().getProperty("precipitation_unit"), PrecipitationUnit.mm));
+    }
+
+    // "-" stands in for missing values (NaN) everywhere
+
+    public String formatTemperature(double celsius) {
+        if (Double.isNaN(celsius)) return "-";
+        return String.format("%.0f%s", temperature.fromCelsius(celsius), temperature.getSymbol());
+    }
+
+    public String formatWindSpeed(double kmh) {
+        if (Double.isNaN(kmh)) return "-";
+        return String.format("%.1f%s", windSpeed.fromKmh(kmh), windSpeed.getSymbol());
+    }
+
+    public String formatPrecipitation(double mm) {
+        if (Double.isNaN(mm)) return "-";
+        return String.format("%.1f%s", precipitation.fromMm(mm), precipitation.getSymbol());
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String value, E fallback) {
+        if (value == null) return fallback;
+        try {
+            return Enum.valueOf(type, value.trim());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid " + type.getSimpleName() + " setting: " + value);
+            return fallback;
+        }
+    }
+}
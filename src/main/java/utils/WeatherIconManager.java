@@ -5,26 +5,26 @@ import java.io.InputStream;
 
 public class WeatherIconManager {
 
-    private static final Font weatherFont;
+    // Loaded on first use, so looking up icon characters doesn't need the JavaFX toolkit (e.g. in the benchmarks)
+    private static class FontHolder {
+        private static final Font weatherFont = loadFont();
+    }
 
-    // Static block to load the font when the class is first loaded
-    static {
-        Font tempFont;
+    private static Font loadFont() {
         try (InputStream is = WeatherIconManager.class.getResourceAsStream("/font/weathericons-regular-webfont.ttf")) {
             if (is == null) {
                 throw new IllegalStateException("Weather icon font not found in resources.");
             }
             // Load the font at a base size
-            tempFont = Font.loadFont(is, 14);
+            return Font.loadFont(is, 14);
         } catch (Exception e) {
             System.err.println("Failed to load weather icon font: " + e.getMessage());
-            tempFont = Font.getDefault();
+            return Font.getDefault();
         }
-        weatherFont = tempFont;
     }
 
     public static Font getFont() {
-        return weatherFont;
+        return FontHolder.weatherFont;
     }
 
     /**